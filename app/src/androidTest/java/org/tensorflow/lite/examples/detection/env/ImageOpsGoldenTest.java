@@ -0,0 +1,168 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares ImageOps with what the app did before it, drawing a Bitmap onto a Canvas through
+ * {@link ImageUtils#getTransformationMatrix}. Skia samples in fixed point too, but with different
+ * precision, so resizes are compared with a tolerance.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageOpsGoldenTest {
+  private static final int SRC_WIDTH = 640;
+  private static final int SRC_HEIGHT = 480;
+  private static final int[][] DST_SIZES = {{300, 300}, {320, 240}, {213, 160}};
+
+  @Test
+  public void resizeNearestMatchesUnfilteredDraw() {
+    final int[] src = noise(SRC_WIDTH, SRC_HEIGHT);
+    for (final int[] size : DST_SIZES) {
+      final int[] expected = draw(src, size[0], size[1], 0, new Paint());
+      final int[] actual = new int[size[0] * size[1]];
+      ImageOps.resizeNearest(src, SRC_WIDTH, SRC_HEIGHT, actual, size[0], size[1]);
+      // Centers that land within rounding error of a pixel edge may pick either pixel.
+      assertMostlyEqual(expected, actual, 0, 0.01f);
+    }
+  }
+
+  @Test
+  public void resizeBilinearMatchesFilteredDraw() {
+    final int[] src = smooth(SRC_WIDTH, SRC_HEIGHT);
+    for (final int[] size : DST_SIZES) {
+      final int[] expected = draw(src, size[0], size[1], 0, new Paint(Paint.FILTER_BITMAP_FLAG));
+      final int[] actual = new int[size[0] * size[1]];
+      ImageOps.resizeBilinear(src, SRC_WIDTH, SRC_HEIGHT, actual, size[0], size[1]);
+      assertMostlyEqual(expected, actual, 3, 0.0f);
+    }
+  }
+
+  @Test
+  public void resizeAreaByTwoMatchesFilteredDraw() {
+    // At exactly half size, each filtered sample falls between four pixels, i.e. averages them.
+    final int[] src = noise(SRC_WIDTH, SRC_HEIGHT);
+    final int dstWidth = SRC_WIDTH / 2;
+    final int dstHeight = SRC_HEIGHT / 2;
+    final int[] expected = draw(src, dstWidth, dstHeight, 0, new Paint(Paint.FILTER_BITMAP_FLAG));
+    final int[] actual = new int[dstWidth * dstHeight];
+    ImageOps.resizeArea(src, SRC_WIDTH, SRC_HEIGHT, actual, dstWidth, dstHeight);
+    assertMostlyEqual(expected, actual, 1, 0.0f);
+  }
+
+  @Test
+  public void rotateMatchesRotatedDraw() {
+    final int[] src = noise(SRC_WIDTH, SRC_HEIGHT);
+    for (final int rotation : new int[] {90, 180, 270}) {
+      final boolean transpose = rotation != 180;
+      final int dstWidth = transpose ? SRC_HEIGHT : SRC_WIDTH;
+      final int dstHeight = transpose ? SRC_WIDTH : SRC_HEIGHT;
+      final int[] expected = draw(src, dstWidth, dstHeight, rotation, new Paint());
+      final int[] actual = new int[dstWidth * dstHeight];
+      ImageOps.rotate(src, SRC_WIDTH, SRC_HEIGHT, rotation, actual);
+      assertArrayEquals("Rotation " + rotation, expected, actual);
+    }
+  }
+
+  @Test
+  public void cropMatchesBitmapCrop() {
+    final int[] src = noise(SRC_WIDTH, SRC_HEIGHT);
+    final Bitmap source = toBitmap(src, SRC_WIDTH, SRC_HEIGHT);
+    final Bitmap cropped = Bitmap.createBitmap(source, 100, 60, 300, 300);
+    final int[] expected = new int[300 * 300];
+    cropped.getPixels(expected, 0, 300, 0, 0, 300, 300);
+    final int[] actual = new int[300 * 300];
+    ImageOps.crop(src, SRC_WIDTH, SRC_HEIGHT, 100, 60, 300, 300, actual);
+    assertArrayEquals(expected, actual);
+  }
+
+  // Draws src into a dstWidth x dstHeight bitmap the way DetectorActivity used to crop frames.
+  private static int[] draw(
+      final int[] src,
+      final int dstWidth,
+      final int dstHeight,
+      final int rotation,
+      final Paint paint) {
+    final Matrix matrix =
+        ImageUtils.getTransformationMatrix(
+            SRC_WIDTH, SRC_HEIGHT, dstWidth, dstHeight, rotation, false);
+    final Bitmap dst = Bitmap.createBitmap(dstWidth, dstHeight, Bitmap.Config.ARGB_8888);
+    new Canvas(dst).drawBitmap(toBitmap(src, SRC_WIDTH, SRC_HEIGHT), matrix, paint);
+    final int[] pixels = new int[dstWidth * dstHeight];
+    dst.getPixels(pixels, 0, dstWidth, 0, 0, dstWidth, dstHeight);
+    return pixels;
+  }
+
+  private static Bitmap toBitmap(final int[] pixels, final int width, final int height) {
+    final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    return bitmap;
+  }
+
+  // Asserts that no channel differs by more than tolerance, except in at most maxShare of the
+  // pixels.
+  private static void assertMostlyEqual(
+      final int[] expected, final int[] actual, final int tolerance, final float maxShare) {
+    int differing = 0;
+    for (int i = 0; i < expected.length; ++i) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        final int difference =
+            Math.abs(((expected[i] >>> shift) & 0xff) - ((actual[i] >>> shift) & 0xff));
+        if (difference > tolerance) {
+          ++differing;
+          break;
+        }
+      }
+    }
+    assertTrue(
+        differing + " of " + expected.length + " pixels differ",
+        differing <= maxShare * expected.length);
+  }
+
+  // Opaque, so premultiplication cannot change the pixels.
+  private static int[] noise(final int width, final int height) {
+    final int[] pixels = new int[width * height];
+    final Random random = new Random(0);
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = 0xff000000 | random.nextInt();
+    }
+    return pixels;
+  }
+
+  // Gradients, since Skia's bilinear weights are coarser than ImageOps' on sharp edges.
+  private static int[] smooth(final int width, final int height) {
+    final int[] pixels = new int[width * height];
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final int r = x * 255 / (width - 1);
+        final int g = y * 255 / (height - 1);
+        final int b = (int) (127.5 + 127.5 * Math.sin(x * 0.05) * Math.cos(y * 0.07));
+        pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return pixels;
+  }
+}
@@ -0,0 +1,117 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Counts what detection allocates once the model is set up, with the app's model. */
+@RunWith(AndroidJUnit4.class)
+public class TFLiteObjectDetectionAPIModelAllocationTest {
+  private static final String MODEL_FILE = "detect.tflite";
+  private static final String LABELS_FILE = "file:///android_asset/labelmap.txt";
+  private static final int INPUT_SIZE = 300;
+  private static final int WARM_UP_RUNS = 3;
+  private static final int COUNTED_RUNS = 50;
+  // The interpreter allocates a few objects per run itself, e.g. to iterate over the outputs.
+  // recognizeImage also allocates the output arrays and a RectF and Recognition per detection,
+  // which detect() into a DetectionBatch avoids.
+  private static final int MAX_ALLOCATIONS_PER_RUN = 10;
+
+  private Classifier classifier;
+  private ByteBuffer input;
+  private final DetectionBatch detections = new DetectionBatch(10);
+
+  @Before
+  public void setUp() throws Exception {
+    classifier =
+        TFLiteObjectDetectionAPIModel.create(
+            InstrumentationRegistry.getInstrumentation().getTargetContext().getAssets(),
+            MODEL_FILE,
+            LABELS_FILE,
+            INPUT_SIZE,
+            true);
+    input = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3);
+    input.order(ByteOrder.nativeOrder());
+  }
+
+  @After
+  public void tearDown() {
+    classifier.close();
+  }
+
+  @Test
+  public void detectAllocatesAlmostNothingOnceWarm() {
+    for (int i = 0; i < WARM_UP_RUNS; ++i) {
+      input.rewind();
+      classifier.detect(input, detections);
+    }
+
+    Debug.startAllocCounting();
+    Debug.resetThreadAllocCount();
+    int count = 0;
+    for (int i = 0; i < COUNTED_RUNS; ++i) {
+      input.rewind();
+      classifier.detect(input, detections);
+      count += detections.getCount();
+    }
+    final int allocations = Debug.getThreadAllocCount();
+    Debug.stopAllocCounting();
+
+    // The default query accepts every detection, so each run fills the whole batch.
+    assertTrue("No detections", count > 0);
+    assertTrue(
+        allocations + " allocations in " + COUNTED_RUNS + " runs",
+        allocations <= MAX_ALLOCATIONS_PER_RUN * COUNTED_RUNS);
+  }
+
+  @Test
+  public void recognizeImageReturnsNewResults() {
+    input.rewind();
+    final List<Classifier.Recognition> first = classifier.recognizeImage(input);
+    final Classifier.Recognition firstResult = first.get(0);
+    input.rewind();
+    final List<Classifier.Recognition> second = classifier.recognizeImage(input);
+    assertNotSame(first, second);
+    assertNotSame(firstResult, second.get(0));
+  }
+
+  @Test
+  public void recognizeImagesReturnsNewResults() {
+    final Bitmap bitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
+    final List<List<Classifier.Recognition>> batch =
+        classifier.recognizeImages(Collections.nCopies(2, bitmap));
+    assertEquals(2, batch.size());
+    input.rewind();
+    final List<Classifier.Recognition> single = classifier.recognizeImage(input);
+    assertNotSame(single, batch.get(0));
+    assertNotSame(single.get(0), batch.get(0).get(0));
+  }
+}
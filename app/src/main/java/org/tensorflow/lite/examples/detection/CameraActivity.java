@@ -54,8 +54,9 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import java.nio.ByteBuffer;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.ParallelYuvConverter;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
 
 public abstract class CameraActivity extends AppCompatActivity
     implements OnImageAvailableListener,
@@ -67,16 +68,25 @@ public abstract class CameraActivity extends AppCompatActivity
   private static final int PERMISSIONS_REQUEST = 1;
 
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // Convert preview frames with precomputed lookup tables instead of per-pixel arithmetic.
+  private static final boolean USE_YUV_LOOKUP_TABLE = true;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private boolean debug = false;
   private Handler handler;
   private HandlerThread handlerThread;
+  private ParallelYuvConverter yuvConverter;
   private boolean useCamera2API;
   private boolean isProcessingFrame = false;
   private byte[][] yuvBytes = new byte[3][];
+  // The current frame's Y, U and V planes. For Camera2 these are the buffers of the open Image
+  // itself, so they are only valid until closeImage().
+  private final ByteBuffer[] yuvPlanes = new ByteBuffer[3];
+  private Image currentImage;
   private int[] rgbBytes = null;
   private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
 
@@ -173,8 +183,16 @@ public abstract class CameraActivity extends AppCompatActivity
     minusImageView.setOnClickListener(this);
   }
 
+  /**
+   * Converts the current frame to ARGB. The frame's camera buffers are released as soon as the
+   * conversion is done, so this may be called at most once per frame.
+   */
   protected int[] getRgbBytes() {
-    imageConverter.run();
+    try {
+      imageConverter.run();
+    } finally {
+      closeImage();
+    }
     return rgbBytes;
   }
 
@@ -182,8 +200,38 @@ public abstract class CameraActivity extends AppCompatActivity
     return yRowStride;
   }
 
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  /** Returns the current frame's Y plane, which is only valid until the frame is converted. */
+  protected ByteBuffer getLuminance() {
+    return yuvPlanes[0];
+  }
+
+  /**
+   * Converts the current frame straight into a model input buffer. Unlike {@link #getRgbBytes()},
+   * this never produces a full size ARGB frame. As with {@link #getRgbBytes()}, the frame's camera
+   * buffers are released afterwards.
+   */
+  protected void fillInputBuffer(final YuvToInputConverter converter, final ByteBuffer inputData) {
+    try {
+      converter.convert(
+          yuvPlanes[0],
+          yuvPlanes[1],
+          yuvPlanes[2],
+          yRowStride,
+          uvRowStride,
+          uvPixelStride,
+          inputData);
+    } finally {
+      closeImage();
+    }
+  }
+
+  /** Returns the Camera2 image to its reader, if it is still open. */
+  private void closeImage() {
+    if (currentImage != null) {
+      currentImage.close();
+      currentImage = null;
+      yuvPlanes[0] = yuvPlanes[1] = yuvPlanes[2] = null;
+    }
   }
 
   /** Callback for android.hardware.Camera API */
@@ -209,14 +257,24 @@ public abstract class CameraActivity extends AppCompatActivity
     }
 
     isProcessingFrame = true;
+    if (yuvBytes[0] != bytes) {
+      // NV21: a full resolution Y plane followed by interleaved V and U samples. Camera1 cycles
+      // through the same callback buffers, so the views only need to be rebuilt occasionally.
+      final int frameSize = previewWidth * previewHeight;
+      yuvPlanes[0] = ByteBuffer.wrap(bytes, 0, frameSize).slice();
+      yuvPlanes[1] = ByteBuffer.wrap(bytes, frameSize + 1, bytes.length - frameSize - 1).slice();
+      yuvPlanes[2] = ByteBuffer.wrap(bytes, frameSize, bytes.length - frameSize).slice();
+    }
     yuvBytes[0] = bytes;
     yRowStride = previewWidth;
+    uvRowStride = previewWidth;
+    uvPixelStride = 2;
 
     imageConverter =
         new Runnable() {
           @Override
           public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
+            yuvConverter.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
           }
         };
 
@@ -254,20 +312,25 @@ public abstract class CameraActivity extends AppCompatActivity
       }
       isProcessingFrame = true;
       Trace.beginSection("imageAvailable");
+      // Read the planes in place rather than copying them out; the image stays open until the
+      // frame has been converted.
       final Plane[] planes = image.getPlanes();
-      fillBytes(planes, yuvBytes);
+      currentImage = image;
+      for (int i = 0; i < planes.length; ++i) {
+        yuvPlanes[i] = planes[i].getBuffer();
+      }
       yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
+      uvRowStride = planes[1].getRowStride();
+      uvPixelStride = planes[1].getPixelStride();
 
       imageConverter =
           new Runnable() {
             @Override
             public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
-                  yuvBytes[0],
-                  yuvBytes[1],
-                  yuvBytes[2],
+              yuvConverter.convertYUV420ToARGB8888(
+                  yuvPlanes[0],
+                  yuvPlanes[1],
+                  yuvPlanes[2],
                   previewWidth,
                   previewHeight,
                   yRowStride,
@@ -281,7 +344,7 @@ public abstract class CameraActivity extends AppCompatActivity
           new Runnable() {
             @Override
             public void run() {
-              image.close();
+              closeImage();
               isProcessingFrame = false;
             }
           };
@@ -309,6 +372,8 @@ public abstract class CameraActivity extends AppCompatActivity
     handlerThread = new HandlerThread("inference");
     handlerThread.start();
     handler = new Handler(handlerThread.getLooper());
+
+    yuvConverter = new ParallelYuvConverter(getYuvConversionBands(), USE_YUV_LOOKUP_TABLE);
   }
 
   @Override
@@ -325,6 +390,8 @@ public abstract class CameraActivity extends AppCompatActivity
     }
 
     super.onPause();
+    // The camera has stopped delivering frames by now.
+    yuvConverter.close();
   }
 
   @Override
@@ -478,19 +545,6 @@ public abstract class CameraActivity extends AppCompatActivity
     getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
   }
 
-  protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
-    // Because of the variable row stride it's not possible to know in
-    // advance the actual necessary dimensions of the yuv planes.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
-        LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
-        yuvBytes[i] = new byte[buffer.capacity()];
-      }
-      buffer.get(yuvBytes[i]);
-    }
-  }
-
   public boolean isDebug() {
     return debug;
   }
@@ -542,6 +596,12 @@ public abstract class CameraActivity extends AppCompatActivity
     }
   }
 
+  /** Shows thread and delegate settings that were chosen for the user, e.g. by auto-tuning. */
+  protected void showInferenceOptions(final int numThreads, final boolean useNNAPI) {
+    threadsTextView.setText(String.valueOf(numThreads));
+    apiSwitchCompat.setChecked(useNNAPI);
+  }
+
   protected void showFrameInfo(String frameInfo) {
     frameValueTextView.setText(frameInfo);
   }
@@ -556,6 +616,15 @@ public abstract class CameraActivity extends AppCompatActivity
 
   protected abstract void processImage();
 
+  /**
+   * Returns the number of row bands each preview frame is split into for conversion. Each band
+   * after the first runs on its own worker thread; 1, the default, converts serially on the
+   * calling thread. Read in onResume().
+   */
+  protected int getYuvConversionBands() {
+    return 1;
+  }
+
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
 
   protected abstract int getLayoutId();
@@ -99,6 +99,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tensorflow.lite.examples.detection.customview.AutoFitTextureView;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.SharedTextToSpeech;
 
 @SuppressLint("ValidFragment")
 public class CameraConnectionFragment extends Fragment {
@@ -659,11 +660,7 @@ public class CameraConnectionFragment extends Fragment {
 
 
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-        t2 = new TextToSpeech(getContext(), status -> {
-          if (status != TextToSpeech.ERROR) {
-            t2.setLanguage(Locale.ENGLISH);
-          }
-        });
+        t2 = SharedTextToSpeech.get(getContext());
       }
 
 
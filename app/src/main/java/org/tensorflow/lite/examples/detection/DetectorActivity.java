@@ -29,26 +29,42 @@ import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
-import android.util.Log;
 import android.util.Size;
 import android.util.TypedValue;
 import android.widget.Toast;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Locale;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyController;
+import org.tensorflow.lite.examples.detection.env.LatencyController.OperatingPoint;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MotionGate;
+import org.tensorflow.lite.examples.detection.env.PerceptualHash;
+import org.tensorflow.lite.examples.detection.env.SharedTextToSpeech;
+import org.tensorflow.lite.examples.detection.env.StartupGraph;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
+import org.tensorflow.lite.examples.detection.tflite.AutoTuner;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
-import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.DetectionBatch;
+import org.tensorflow.lite.examples.detection.tflite.DetectionCache;
+import org.tensorflow.lite.examples.detection.tflite.DetectionQuery;
+import org.tensorflow.lite.examples.detection.tflite.ModelRegistry;
+import org.tensorflow.lite.examples.detection.tflite.ModelSpec;
+import org.tensorflow.lite.examples.detection.tflite.ModelSwitcher;
+import org.tensorflow.lite.examples.detection.tflite.WarmUp;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 /**
@@ -59,6 +75,7 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private static final Logger LOGGER = new Logger();
 
   // Configuration values for the prepackaged SSD model.
+  private static final String TF_OD_API_MODEL_NAME = "ssd_mobilenet_v1_quantized_300";
   private static final int TF_OD_API_INPUT_SIZE = 300;
   private static final boolean TF_OD_API_IS_QUANTIZED = true;
   private static final String TF_OD_API_MODEL_FILE = "detect.tflite";
@@ -66,20 +83,107 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
+  // Initial size of the detection batches, which grow if a model returns more.
+  private static final int MAX_DETECTIONS = 10;
   private static final boolean MAINTAIN_ASPECT = false;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
+  // Number of row bands preview frames are converted in, one per worker thread.
+  private static final int YUV_CONVERSION_BANDS =
+      Math.min(4, Runtime.getRuntime().availableProcessors());
   private static final boolean SAVE_PREVIEW_BITMAP = false;
+  // Sample the camera planes straight into the model input instead of going through the ARGB
+  // frame and crop bitmaps. Only supported for quantized models.
+  private static final boolean USE_FUSED_PREPROCESSING = true;
+  // Detect only within the area around the currently tracked objects, falling back to the full
+  // frame every FULL_FRAME_INTERVAL frames so new objects are still picked up.
+  private static final boolean USE_TRACKED_REGION_OF_INTEREST = false;
+  private static final int FULL_FRAME_INTERVAL = 10;
+  // Fraction of the region's size added on each side, so objects can move between frames.
+  private static final float REGION_OF_INTEREST_MARGIN = 0.25f;
+  // Limits how far a region can zoom in, relative to the full frame.
+  private static final int MAX_REGION_OF_INTEREST_ZOOM = 4;
+  // Trade model, threads and detection rate for latency, see LatencyController. The target is the
+  // detection time per camera frame, so detecting every other frame halves it.
+  private static final boolean ADAPT_TO_LATENCY = true;
+  private static final float TARGET_FRAME_MS = 100;
+  private static final int LATENCY_WINDOW = 15;
+  private static final float LATENCY_DOWNGRADE_MARGIN = 0.2f;
+  private static final float LATENCY_UPGRADE_MARGIN = 0.3f;
+  // Thread count until the model has been tuned, see AutoTuner.
+  private static final int DEFAULT_NUM_THREADS = 4;
+  private static final String AUTO_TUNER_PREFERENCES = "auto_tuner";
+  // Dummy inferences run on a new model while the camera session is being configured.
+  private static final int WARM_UP_RUNS = 3;
+  private static final int STARTUP_THREADS = 3;
+  // Skip detection while the scene is static, see MotionGate. The threshold is the mean absolute
+  // difference, in luminance levels, of samples MOTION_SAMPLE_STEP pixels apart. A static scene is
+  // still detected on again once the last detection is MOTION_MAX_REUSE_MS old.
+  private static final boolean USE_MOTION_GATE = true;
+  private static final int MOTION_SAMPLE_STEP = 16;
+  private static final float MOTION_THRESHOLD = 4.0f;
+  private static final long MOTION_MAX_REUSE_MS = 3000;
+  // Reuse the detections of views seen recently, see DetectionCache. Frames match a view if their
+  // perceptual hashes differ in at most CACHE_MAX_DISTANCE of 64 bits. Every CACHE_AUDIT_INTERVAL
+  // hits are detected on anyway, to count the hits that were wrong.
+  private static final boolean USE_DETECTION_CACHE = true;
+  private static final int CACHE_SIZE = 32;
+  private static final int CACHE_MAX_DISTANCE = 4;
+  private static final long CACHE_MAX_AGE_MS = 60000;
+  private static final int CACHE_AUDIT_INTERVAL = 10;
+  private static final int CACHE_REPORT_INTERVAL = 100;
   private static final float TEXT_SIZE_DIP = 10;
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
   private TextToSpeech t1;
-  private Classifier detector;
-  private long lastProcessingTimeMs;
+  // Written on the background thread, read on the camera and UI threads.
+  private volatile long lastProcessingTimeMs;
   private Bitmap rgbFrameBitmap = null;
-  private Bitmap croppedBitmap = null;
   private Bitmap cropCopyBitmap = null;
   private Bitmap cropCopyBitmap2 = null;
-  private boolean computingDetection = false;
+
+  // The models that can be switched to, and the current one with its buffers. The current state
+  // is only replaced on the camera thread, between frames, by a state that switchModel() prepared
+  // in the background.
+  private ModelRegistry modelRegistry;
+  private volatile ModelSwitcher<DetectorState> detectors;
+
+  // Two slots of the current state, so the next frame can be preprocessed into one while the other
+  // is being detected on. Guarded by slotLock.
+  private final Object slotLock = new Object();
+  private InferenceSlot[] slots;
+  private boolean detectionScheduled = false;
+  private final Runnable detectionRunnable = this::runNextDetection;
+  // Handler of the background thread, used to reschedule detection from that thread without
+  // going through runInBackground().
+  private Handler detectionHandler;
+  // Which detections the detector decodes, updated before each frame on the background thread.
+  private final DetectionQuery detectionQuery = new DetectionQuery();
+
+  // Region of the frame that the model currently sees, see updateRegionOfInterest().
+  private volatile RectF requestedRegionOfInterest;
+  private final RectF regionOfInterest = new RectF();
+  private int regionLeft;
+  private int regionTop;
+  private int regionWidth;
+  private int regionHeight;
+  private long lastFullFrameTimestamp;
+
+  // Null unless ADAPT_TO_LATENCY is set. Only fed from the background thread.
+  private volatile LatencyController latencyController;
+  // Thread count picked with the +/- buttons, which the controller then keeps to, or 0 if none was.
+  // Only used on the background thread.
+  private int manualNumThreads = 0;
+  private AutoTuner autoTuner;
+  // Set once every startup task has run. Until then, the fields they initialize must not be used
+  // from other threads.
+  private volatile boolean started = false;
+  // When the preview size was chosen and startup began, for the startup metrics.
+  private long startTimeMs;
+  private boolean reportedReady = false;
+  private boolean reportedFirstResult = false;
+  private volatile int inferenceInterval = 1;
+  // Null unless USE_MOTION_GATE is set. Only used on the camera thread.
+  private MotionGate motionGate;
 
   private long timestamp = 0;
 
@@ -92,61 +196,123 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
   @Override
   public void onPreviewSizeChosen(final Size size, final int rotation) {
-
-     t1 = new TextToSpeech(getApplicationContext(), status -> {
-          if (status != TextToSpeech.ERROR) {
-              t1.setLanguage(Locale.ENGLISH);
-          }
-      });
-
-    final float textSizePx =
-        TypedValue.applyDimension(
-            TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
-    borderedText = new BorderedText(textSizePx);
-    borderedText.setTypeface(Typeface.MONOSPACE);
-
-    tracker = new MultiBoxTracker(this);
-
-    int cropSize = TF_OD_API_INPUT_SIZE;
-
-    try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-      cropSize = TF_OD_API_INPUT_SIZE;
-    } catch (final IOException e) {
-      e.printStackTrace();
-      LOGGER.e(e, "Exception initializing classifier!");
-      Toast toast =
-          Toast.makeText(
-              getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
-      toast.show();
-      finish();
-    }
+    started = false;
+    startTimeMs = SystemClock.uptimeMillis();
 
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
 
     sensorOrientation = rotation - getScreenOrientation();
     LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
-
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
+    motionGate =
+        USE_MOTION_GATE
+            ? new MotionGate(
+                previewWidth,
+                previewHeight,
+                MOTION_SAMPLE_STEP,
+                MOTION_THRESHOLD,
+                MOTION_MAX_REUSE_MS)
+            : null;
+
+    modelRegistry =
+        new ModelRegistry(
+            new ModelSpec(
+                TF_OD_API_MODEL_NAME,
+                TF_OD_API_MODEL_FILE,
+                TF_OD_API_LABELS_FILE,
+                TF_OD_API_INPUT_SIZE,
+                TF_OD_API_IS_QUANTIZED));
+
+    // Frames are dropped until every task has run, see processImage().
+    final ExecutorService startupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS);
+    new StartupGraph(startupExecutor)
+        .add("speech", () -> t1 = SharedTextToSpeech.get(this))
+        .add("detector", this::loadDefaultDetector)
+        .add("tracker", this::createTracker)
+        .add("buffers", this::createBuffers)
+        .add(
+            "region",
+            () -> {
+              // The converter samples the frame through the inverse of frameToCropTransform, so
+              // results map back to the frame through cropToFrameTransform either way.
+              cropToFrameTransform = new Matrix();
+              setRegion(0, 0, previewWidth, previewHeight);
+            },
+            "detector")
+        .add("overlay", this::runOnUiThread, this::attachOverlay, "tracker")
+        .start(
+            new StartupGraph.Listener() {
+              @Override
+              public void onComplete(final long elapsedMs) {
+                startupExecutor.shutdown();
+                LOGGER.i("Started in %dms", elapsedMs);
+                started = true;
+              }
+
+              @Override
+              public void onFailure(final String taskName, final Throwable error) {
+                startupExecutor.shutdown();
+                runOnUiThread(
+                    () -> {
+                      Toast toast =
+                          Toast.makeText(
+                              getApplicationContext(),
+                              "Could not start: " + taskName + " failed",
+                              Toast.LENGTH_LONG);
+                      toast.show();
+                      finish();
+                    });
+              }
+            });
+  }
+
+  private void loadDefaultDetector() throws IOException {
+    autoTuner = new AutoTuner(getSharedPreferences(AUTO_TUNER_PREFERENCES, MODE_PRIVATE));
+    final DetectorState initial = loadDetectorState(modelRegistry.getDefault());
+    detectors =
+        new ModelSwitcher<>(
+            initial,
+            spec -> {
+              final DetectorState state = loadDetectorState(spec);
+              // Only swap in a model that is ready, so detection doesn't stall on its warm-up.
+              state.warmUp.await();
+              return state;
+            },
+            state -> state.detector.close(),
+            this::runInBackground);
+    synchronized (slotLock) {
+      slots = initial.slots;
+    }
+    final AutoTuner.Configuration tuned = initial.tunedConfiguration;
+    if (ADAPT_TO_LATENCY) {
+      latencyController =
+          createLatencyController(tuned != null ? tuned.numThreads : DEFAULT_NUM_THREADS);
+    }
+    if (tuned != null) {
+      runOnUiThread(() -> showInferenceOptions(tuned.numThreads, tuned.useNNAPI));
+    } else {
+      runInBackground(() -> startTuning(initial));
+    }
+  }
+
+  private void createBuffers() {
     rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+  }
 
-    frameToCropTransform =
-        ImageUtils.getTransformationMatrix(
-            previewWidth, previewHeight,
-            cropSize, cropSize,
-            sensorOrientation, MAINTAIN_ASPECT);
+  private void createTracker() {
+    final float textSizePx =
+        TypedValue.applyDimension(
+            TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
+    borderedText = new BorderedText(textSizePx);
+    borderedText.setTypeface(Typeface.MONOSPACE);
 
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
+    tracker = new MultiBoxTracker(this);
+    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+  }
 
+  // Runs on the UI thread.
+  private void attachOverlay() {
     trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
     trackingOverlay.addCallback(
             canvas -> {
@@ -156,217 +322,666 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
                 tracker.drawDebug(canvas);
               }
             });
-
-    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
   }
 
   @Override
   protected void processImage() {
-
+    if (!started) {
+      // Still starting up, or the model failed to load and the activity is finishing.
+      readyForNextImage();
+      return;
+    }
 
     ++timestamp;
     final long currTimestamp = timestamp;
     trackingOverlay.postInvalidate();
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    final DetectorState previousState = detectors.takeOverPending();
+    if (previousState != null) {
+      onDetectorStateSwapped(previousState);
+    }
+    final DetectorState state = detectors.getCurrent();
+
+    // Frames that arrive before the model is warmed up are dropped, rather than queued behind the
+    // warm-up.
+    if (!state.warmUp.isDone()) {
+      readyForNextImage();
+      return;
+    }
+    if (!reportedReady) {
+      reportedReady = true;
+      LOGGER.i(
+          "Ready to detect %dms after start, warm-up took %dms",
+          SystemClock.uptimeMillis() - startTimeMs,
+          state.warmUp.getElapsedMs());
+    }
+
+    if (currTimestamp % inferenceInterval != 0 || isSceneStatic()) {
       readyForNextImage();
       return;
     }
-    computingDetection = true;
+
+    // Never blocks: while one slot is being detected on, the other one is free, or holds an older
+    // frame that has not been picked up yet and is replaced by this one.
+    final InferenceSlot slot = acquireSlotToFill();
     LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
+    if (motionGate != null) {
+      // The frame is sent to detection from here on, so later frames are compared with it.
+      onMotionReference();
+    }
+
+    // Each slot keeps its own copy of the crop-to-frame transform, so the region can change while
+    // a detection is running.
+    updateRegionOfInterest(currTimestamp);
+    slot.timestamp = currTimestamp;
+    slot.cropToFrameTransform.set(cropToFrameTransform);
+    slot.cacheHit = false;
+    slot.auditCacheHit = false;
+    if (state.cache != null && lookUpCachedDetections(state.cache, slot)) {
+      // The frame's detections are known, so it is not converted at all.
+      readyForNextImage();
+      submitSlot(slot);
+      return;
+    }
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    if (state.useFusedPreprocessing) {
+      fillInputBuffer(state.inputConverter, slot.inputData);
+      readyForNextImage();
+    } else {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
 
-    readyForNextImage();
+      readyForNextImage();
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
-    // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+      final Canvas canvas = new Canvas(slot.croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+      // For examining the actual TF input.
+      if (SAVE_PREVIEW_BITMAP) {
+        ImageUtils.saveBitmap(slot.croppedBitmap);
+      }
     }
 
-    runInBackground(
-            () -> {
-                LOGGER.i("Running detection on image " + currTimestamp);
-                final long startTime = SystemClock.uptimeMillis();
-                final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
-                lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-                cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-                cropCopyBitmap2 = Bitmap.createBitmap(croppedBitmap);
-                final Canvas canvas1 = new Canvas(cropCopyBitmap);
-                final Paint paint = new Paint();
-                paint.setColor(Color.RED);
-                paint.setStyle(Style.STROKE);
-                paint.setStrokeWidth(2.0f);
-
-                float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                switch (MODE) {
-                    case TF_OD_API:
-                        minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                        break;
-                }
-
-                // Lista de objetos
-                List<Classifier.Recognition> mappedRecognitions =
-                        new LinkedList<Classifier.Recognition>();
-
-
-
-                for (final Classifier.Recognition result : results) {
-                    final RectF location = result.getLocation();
-                    if (location != null && result.getConfidence() >= minimumConfidence) {
-                        canvas1.drawRect(location, paint);
-
-                        cropToFrameTransform.mapRect(location);
-
-                        result.setLocation(location);
-                        mappedRecognitions.add(result);
-                    }
-                }
-                  // Fala os objetos encontrados
-
-                if (mappedRecognitions.isEmpty() == false){
-                    String toSpeak = mappedRecognitions.get(0).getTitle();
-                    int divScreenWeight = previewHeight/3;
-                    int divScreenHeight =  previewWidth/3;
-                    int div2ScreenWeight = divScreenWeight * 2;
-                    int div2ScreenHeight= divScreenHeight * 2;
-                    int metadeDivScreenWeight = divScreenWeight/2;
-                    int metadeDivScreenHeight = divScreenHeight/2;
-                    float  topRetangle = mappedRecognitions.get(0).getLocation().left;
-                    float  rightRetangle = mappedRecognitions.get(0).getLocation().top;
-                    float  bottomRetangle = mappedRecognitions.get(0).getLocation().right;
-                    float  leftRetangle = mappedRecognitions.get(0).getLocation().bottom;
-                    boolean onCenter = false;
-                    boolean onTop = false;
-                    boolean onBottom = false;
-                    boolean onLeft = false;
-                    boolean onRight = false;
-                    boolean onFullH = false;
-                    boolean onFullV = false;
-                    String position = " ";
-
-
-                    // Check if retangle is on right
-                    if (rightRetangle < divScreenWeight){
-                        position += " on the right";
-                        onRight = true;
-                    }
-
-                    if(onRight == true && leftRetangle > (divScreenWeight + metadeDivScreenWeight)){
-                        position += " and in the center";
-                    }
-
-                    if(onRight == true && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position += " and on the bottom";
-                    }
-                    if(onRight == true && topRetangle < (divScreenHeight - metadeDivScreenHeight)){
-                        position += " and on the top";
-                    }
-                    // finish on right
-
-
-                    // Check if retangle is on center
-                    if (rightRetangle > (divScreenWeight - metadeDivScreenWeight)){
-                        position = " in the center";
-                        onCenter = true;
-                    }
-                    if(onCenter == true && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight)){
-                        position += " and on the left";
-                    }
-                    if(onCenter == true && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position += " and on the bottom";
-                    }
-                    if(onCenter == true && topRetangle < (divScreenHeight - metadeDivScreenHeight)){
-                        position += " and on the top";
-                    }
-                    // finish on center
-
-                    // Check if retangle is on left
-                    if (rightRetangle > (divScreenWeight + metadeDivScreenWeight)){
-                        position = " on the left";
-                        onLeft = true;
-                    }
-                    if(onLeft == true && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position += " and on the bottom";
-                    }
-                    if(onLeft == true && topRetangle < (divScreenHeight - metadeDivScreenHeight)){
-                        position += " and on the top";
-                    }
-                    // finish on left
-
-                    // Full screen
-                    // Horizontal
-                    if(rightRetangle < (divScreenWeight - metadeDivScreenWeight) && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight)){
-                        position = "  ";
-                        onFullH = true;
-                    }
-                    if(onFullH == true && topRetangle < (divScreenHeight - metadeDivScreenHeight)){
-                        position += " on the top";
-                    }
-                    if(onFullH == true && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position += " on the bottom";
-                    }
-                    if(onFullH == true && topRetangle > (divScreenHeight - metadeDivScreenHeight) && bottomRetangle < (div2ScreenHeight + metadeDivScreenHeight)){
-                        position += " in the center";
-                    }
-
-                    //Vertical
-                    if(topRetangle < (divScreenHeight - metadeDivScreenHeight) && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position = "  ";
-                        onFullV = true;
-                    }
-                    if (onFullV == true && rightRetangle > (divScreenWeight + metadeDivScreenWeight)){
-                        position = " on the left";
-                    }
-                    if (onFullV == true && rightRetangle < (divScreenWeight - metadeDivScreenWeight)){
-                        position += " on the right";
-                        }
-                    if (onFullV == true && rightRetangle < (divScreenWeight + metadeDivScreenWeight) && rightRetangle > (divScreenWeight - metadeDivScreenWeight) ){
-                        position = " on the center";
-                    }
-
-                    // full
-                    if(rightRetangle < (divScreenWeight - metadeDivScreenWeight) && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight) && topRetangle < (divScreenHeight - metadeDivScreenHeight) && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)){
-                        position = " on full screen";
-                        }
-                    // finish Full screen
-                    toSpeak += position;
-                    Toast.makeText(getApplicationContext(), toSpeak, Toast.LENGTH_SHORT);
-
-                    t1.speak(toSpeak, TextToSpeech.QUEUE_FLUSH, null);
-
-                  }else{
-                    String toError = "Sorry, Try again!";
-                    Toast.makeText(getApplicationContext(), toError, Toast.LENGTH_SHORT);
-
-                    t1.speak(toError, TextToSpeech.QUEUE_FLUSH, null);
-                }
-
-
-                tracker.trackResults(mappedRecognitions, currTimestamp);
-                trackingOverlay.postInvalidate();
-
-              computingDetection = false;
-
-              runOnUiThread(
-                      () -> {
-                        showFrameInfo(previewWidth + "x" + previewHeight);
-                        showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-                        showInference(lastProcessingTimeMs + "ms");
-                      });
-                final Handler handler = new Handler();
-                handler.postDelayed(() -> {
-
-                    Log.e("Hey", "CLEAR");
-
-                    //delay 2s
-                }, 2000);
+    submitSlot(slot);
+  }
 
-            });
+  // Looks the current frame up in the cache, before it is converted and its Y plane released.
+  // Returns whether the slot can reuse the cached detections without detecting on the frame.
+  private boolean lookUpCachedDetections(final DetectionCache cache, final InferenceSlot slot) {
+    // Detections only cover the region the model saw, so the region is part of the key.
+    slot.frameHash =
+        PerceptualHash.withRegion(
+            PerceptualHash.dHash(getLuminance(), previewWidth, previewHeight, getLuminanceStride()),
+            regionLeft,
+            regionTop,
+            regionWidth,
+            regionHeight);
+    final boolean hit =
+        cache.find(slot.frameHash, SystemClock.uptimeMillis(), slot.cachedDetections);
+    if (cache.getLookups() % CACHE_REPORT_INTERVAL == 0) {
+      LOGGER.i("Detection cache: " + cache.getStatString());
+    }
+    if (!hit) {
+      return false;
+    }
+    if (cache.shouldAudit()) {
+      slot.auditCacheHit = true;
+      return false;
+    }
+    slot.cacheHit = true;
+    return true;
+  }
+
+  // Returns whether the current frame can be skipped because the scene has not changed since the
+  // last detection, whose results the tracker keeps showing.
+  private boolean isSceneStatic() {
+    if (motionGate == null) {
+      return false;
+    }
+    // What detecting on the frame would cost is estimated from the last detection, leaving out
+    // the conversion.
+    return !motionGate.shouldDetect(
+        getLuminance(), getLuminanceStride(), SystemClock.uptimeMillis(), lastProcessingTimeMs);
+  }
+
+  private void onMotionReference() {
+    final int skipped = motionGate.getSkippedFrames();
+    motionGate.onDetect(getLuminance(), getLuminanceStride(), SystemClock.uptimeMillis());
+    if (skipped > 0) {
+      LOGGER.i(
+          "Scene changed after %d static frames. Motion gate: %s",
+          skipped, motionGate.getStatString());
+    }
+  }
+
+  private InferenceSlot acquireSlotToFill() {
+    synchronized (slotLock) {
+      InferenceSlot pending = null;
+      for (final InferenceSlot slot : slots) {
+        // Only this thread fills slots, so one still marked FILLING was left by a failed fill.
+        if (slot.state == SlotState.FREE || slot.state == SlotState.FILLING) {
+          slot.state = SlotState.FILLING;
+          return slot;
+        }
+        if (slot.state == SlotState.READY) {
+          pending = slot;
+        }
+      }
+      // Latest frame wins: drop the frame that is still waiting for detection.
+      LOGGER.v("Dropping image %d", pending.timestamp);
+      pending.state = SlotState.FILLING;
+      return pending;
+    }
+  }
+
+  private void submitSlot(final InferenceSlot slot) {
+    final boolean schedule;
+    synchronized (slotLock) {
+      slot.state = SlotState.READY;
+      schedule = !detectionScheduled;
+      detectionScheduled = true;
+    }
+    // Outside the lock: runInBackground() waits for onPause(), which waits for the background
+    // thread.
+    if (schedule) {
+      runInBackground(detectionRunnable);
+    }
+  }
 
+  // Runs on the background thread, one READY slot per call, and reschedules itself while frames
+  // keep arriving so other background work can interleave.
+  private void runNextDetection() {
+    InferenceSlot slot = null;
+    synchronized (slotLock) {
+      for (final InferenceSlot candidate : slots) {
+        if (candidate.state == SlotState.READY) {
+          slot = candidate;
+          slot.state = SlotState.INFERRING;
+          break;
+        }
+      }
+      if (slot == null) {
+        detectionScheduled = false;
+        return;
+      }
+    }
+
+    try {
+      detect(slot);
+    } finally {
+      synchronized (slotLock) {
+        slot.state = SlotState.FREE;
+      }
+    }
+
+    // Another frame may have been submitted while this one was being detected on.
+    if (detectionHandler == null || detectionHandler.getLooper() != Looper.myLooper()) {
+      detectionHandler = new Handler(Looper.myLooper());
+    }
+    detectionHandler.post(detectionRunnable);
+  }
+
+  private void detect(final InferenceSlot slot) {
+    final DetectorState state = slot.owner;
+    final long currTimestamp = slot.timestamp;
+    final Bitmap croppedBitmap = slot.croppedBitmap;
+    final Matrix cropToFrameTransform = slot.cropToFrameTransform;
+    LOGGER.i("Running detection on image " + currTimestamp);
+    float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+    switch (MODE) {
+      case TF_OD_API:
+        minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        break;
+    }
+
+    // Detections below the confidence are dropped while the output is decoded.
+    detectionQuery.setMinimumScore(minimumConfidence);
+    state.detector.setQuery(detectionQuery);
+
+    final DetectionBatch detections = state.detections;
+    final DetectionCache cache = state.cache;
+    if (slot.cacheHit) {
+      // A view seen recently reuses its detections, which are in frame coordinates.
+      detections.copyFrom(slot.cachedDetections);
+      LOGGER.i("Reusing cached detections for image " + currTimestamp);
+    } else {
+      final long startTime = SystemClock.uptimeMillis();
+      if (state.useFusedPreprocessing) {
+        state.detector.detect(slot.inputData, detections);
+      } else {
+        state.detector.detect(croppedBitmap, detections);
+      }
+      lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+      if (state.tuningSession != null) {
+        continueTuning(state, lastProcessingTimeMs);
+      } else {
+        adaptToLatency(state, lastProcessingTimeMs);
+      }
+      // The crop copies are only used for debug drawing of the legacy bitmap path.
+      Canvas canvas1 = null;
+      if (!state.useFusedPreprocessing) {
+        cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
+        cropCopyBitmap2 = Bitmap.createBitmap(croppedBitmap);
+        canvas1 = new Canvas(cropCopyBitmap);
+      }
+      final Paint paint = new Paint();
+      paint.setColor(Color.RED);
+      paint.setStyle(Style.STROKE);
+      paint.setStrokeWidth(2.0f);
+
+      // Lista de objetos
+      if (canvas1 != null) {
+        final RectF location = new RectF();
+        for (int i = 0; i < detections.getCount(); ++i) {
+          detections.getBox(i, location);
+          canvas1.drawRect(location, paint);
+        }
+      }
+      detections.transform(cropToFrameTransform);
+      if (cache != null) {
+        if (slot.auditCacheHit) {
+          cache.audit(slot.cachedDetections, detections);
+        }
+        cache.put(slot.frameHash, SystemClock.uptimeMillis(), detections);
+      }
+    }
+
+    // Fala os objetos encontrados
+    if (!detections.isEmpty()) {
+      String toSpeak = detections.getLabel(0);
+      int divScreenWeight = previewHeight / 3;
+      int divScreenHeight = previewWidth / 3;
+      int div2ScreenWeight = divScreenWeight * 2;
+      int div2ScreenHeight = divScreenHeight * 2;
+      int metadeDivScreenWeight = divScreenWeight / 2;
+      int metadeDivScreenHeight = divScreenHeight / 2;
+      float topRetangle = detections.getLeft(0);
+      float rightRetangle = detections.getTop(0);
+      float bottomRetangle = detections.getRight(0);
+      float leftRetangle = detections.getBottom(0);
+      boolean onCenter = false;
+      boolean onLeft = false;
+      boolean onRight = false;
+      boolean onFullH = false;
+      boolean onFullV = false;
+      String position = " ";
+
+      // Check if retangle is on right
+      if (rightRetangle < divScreenWeight) {
+        position += " on the right";
+        onRight = true;
+      }
+      if (onRight && leftRetangle > (divScreenWeight + metadeDivScreenWeight)) {
+        position += " and in the center";
+      }
+      if (onRight && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position += " and on the bottom";
+      }
+      if (onRight && topRetangle < (divScreenHeight - metadeDivScreenHeight)) {
+        position += " and on the top";
+      }
+      // finish on right
+
+      // Check if retangle is on center
+      if (rightRetangle > (divScreenWeight - metadeDivScreenWeight)) {
+        position = " in the center";
+        onCenter = true;
+      }
+      if (onCenter && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight)) {
+        position += " and on the left";
+      }
+      if (onCenter && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position += " and on the bottom";
+      }
+      if (onCenter && topRetangle < (divScreenHeight - metadeDivScreenHeight)) {
+        position += " and on the top";
+      }
+      // finish on center
+
+      // Check if retangle is on left
+      if (rightRetangle > (divScreenWeight + metadeDivScreenWeight)) {
+        position = " on the left";
+        onLeft = true;
+      }
+      if (onLeft && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position += " and on the bottom";
+      }
+      if (onLeft && topRetangle < (divScreenHeight - metadeDivScreenHeight)) {
+        position += " and on the top";
+      }
+      // finish on left
+
+      // Full screen
+      // Horizontal
+      if (rightRetangle < (divScreenWeight - metadeDivScreenWeight)
+          && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight)) {
+        position = "  ";
+        onFullH = true;
+      }
+      if (onFullH && topRetangle < (divScreenHeight - metadeDivScreenHeight)) {
+        position += " on the top";
+      }
+      if (onFullH && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position += " on the bottom";
+      }
+      if (onFullH
+          && topRetangle > (divScreenHeight - metadeDivScreenHeight)
+          && bottomRetangle < (div2ScreenHeight + metadeDivScreenHeight)) {
+        position += " in the center";
+      }
+
+      // Vertical
+      if (topRetangle < (divScreenHeight - metadeDivScreenHeight)
+          && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position = "  ";
+        onFullV = true;
+      }
+      if (onFullV && rightRetangle > (divScreenWeight + metadeDivScreenWeight)) {
+        position = " on the left";
+      }
+      if (onFullV && rightRetangle < (divScreenWeight - metadeDivScreenWeight)) {
+        position += " on the right";
+      }
+      if (onFullV
+          && rightRetangle < (divScreenWeight + metadeDivScreenWeight)
+          && rightRetangle > (divScreenWeight - metadeDivScreenWeight)) {
+        position = " on the center";
+      }
+
+      // full
+      if (rightRetangle < (divScreenWeight - metadeDivScreenWeight)
+          && leftRetangle > (div2ScreenWeight + metadeDivScreenWeight)
+          && topRetangle < (divScreenHeight - metadeDivScreenHeight)
+          && bottomRetangle > (div2ScreenHeight + metadeDivScreenHeight)) {
+        position = " on full screen";
+      }
+      // finish Full screen
+      toSpeak += position;
+      Toast.makeText(getApplicationContext(), toSpeak, Toast.LENGTH_SHORT);
+
+      t1.speak(toSpeak, TextToSpeech.QUEUE_FLUSH, null);
+    } else {
+      String toError = "Sorry, Try again!";
+      Toast.makeText(getApplicationContext(), toError, Toast.LENGTH_SHORT);
+
+      t1.speak(toError, TextToSpeech.QUEUE_FLUSH, null);
+    }
+
+    if (!reportedFirstResult) {
+      reportedFirstResult = true;
+      LOGGER.i("First result spoken %dms after start", SystemClock.uptimeMillis() - startTimeMs);
+    }
+
+    tracker.trackResults(detections, currTimestamp);
+    trackingOverlay.postInvalidate();
+
+    runOnUiThread(
+        () -> {
+          showFrameInfo(previewWidth + "x" + previewHeight);
+          showCropInfo(state.cropSize + "x" + state.cropSize);
+          showInference(lastProcessingTimeMs + "ms");
+        });
+  }
+
+  /**
+   * Restricts detection to a region of the frame, in frame coordinates, e.g. one picked by the
+   * user. The region is enlarged to the frame's aspect ratio and kept within the frame. Pass null
+   * to go back to the full frame, or to the tracked region if USE_TRACKED_REGION_OF_INTEREST is
+   * set.
+   */
+  public void setRegionOfInterest(final RectF region) {
+    requestedRegionOfInterest = region != null ? new RectF(region) : null;
+  }
+
+  private void updateRegionOfInterest(final long currTimestamp) {
+    final RectF requested = requestedRegionOfInterest;
+    final RectF region = regionOfInterest;
+    boolean useRegion = false;
+    if (requested != null) {
+      region.set(requested);
+      useRegion = true;
+    } else if (USE_TRACKED_REGION_OF_INTEREST
+        && currTimestamp - lastFullFrameTimestamp < FULL_FRAME_INTERVAL) {
+      useRegion = tracker.getTrackedRegion(region);
+      if (useRegion) {
+        region.inset(
+            -REGION_OF_INTEREST_MARGIN * region.width(),
+            -REGION_OF_INTEREST_MARGIN * region.height());
+      }
+    }
+
+    if (!useRegion) {
+      lastFullFrameTimestamp = currTimestamp;
+      setRegion(0, 0, previewWidth, previewHeight);
+      return;
+    }
+
+    // Keep the frame's aspect ratio so objects are scaled to the input as they are for the full
+    // frame, and don't zoom in further than MAX_REGION_OF_INTEREST_ZOOM.
+    float width = Math.max(region.width(), previewWidth / (float) MAX_REGION_OF_INTEREST_ZOOM);
+    float height = Math.max(region.height(), previewHeight / (float) MAX_REGION_OF_INTEREST_ZOOM);
+    if (width * previewHeight < height * previewWidth) {
+      width = height * previewWidth / previewHeight;
+    } else {
+      height = width * previewHeight / previewWidth;
+    }
+    final int roiWidth = Math.min(previewWidth, Math.round(width));
+    final int roiHeight = Math.min(previewHeight, Math.round(height));
+    // Shift rather than shrink the region where it overlaps the edge of the frame.
+    final int left =
+        Math.max(0, Math.min(previewWidth - roiWidth, Math.round(region.centerX() - width / 2)));
+    final int top =
+        Math.max(0, Math.min(previewHeight - roiHeight, Math.round(region.centerY() - height / 2)));
+    setRegion(left, top, roiWidth, roiHeight);
+  }
+
+  // Points the model input at a rectangle of the frame.
+  private void setRegion(final int left, final int top, final int width, final int height) {
+    if (frameToCropTransform != null
+        && left == regionLeft
+        && top == regionTop
+        && width == regionWidth
+        && height == regionHeight) {
+      return;
+    }
+    applyRegion(left, top, width, height);
+  }
+
+  // Builds the transforms between the frame and the current model's input for a region.
+  private void applyRegion(final int left, final int top, final int width, final int height) {
+    final DetectorState state = detectors.getCurrent();
+    final int cropSize = state.cropSize;
+    regionLeft = left;
+    regionTop = top;
+    regionWidth = width;
+    regionHeight = height;
+    LOGGER.i("Detecting in %dx%d region at (%d, %d)", width, height, left, top);
+
+    frameToCropTransform =
+        ImageUtils.getTransformationMatrix(
+            width, height,
+            cropSize, cropSize,
+            sensorOrientation, MAINTAIN_ASPECT);
+    frameToCropTransform.preTranslate(-left, -top);
+    frameToCropTransform.invert(cropToFrameTransform);
+
+    if (state.inputConverter != null) {
+      state.inputConverter.setRegion(left, top, width, height);
+    }
+  }
+
+  /**
+   * Switches to a model from the registry. The model and its buffers are prepared on a separate
+   * thread and take over from the next frame on, without interrupting the camera or detection.
+   */
+  public void switchModel(final String name) {
+    final ModelSpec spec = modelRegistry.get(name);
+    if (spec == null) {
+      throw new IllegalArgumentException("No model named " + name);
+    }
+    detectors.switchTo(spec);
+  }
+
+  // Runs on the background thread, after each detection.
+  private void adaptToLatency(final DetectorState state, final long latencyMs) {
+    if (latencyController == null) {
+      return;
+    }
+    // Detections still running on a model that is being switched away from don't count.
+    if (state != detectors.getCurrent()) {
+      return;
+    }
+    final OperatingPoint point = latencyController.onLatency(latencyMs);
+    if (point == null) {
+      return;
+    }
+    state.detector.setNumThreads(point.numThreads);
+    inferenceInterval = point.inferenceInterval;
+  }
+
+  public ModelRegistry getModelRegistry() {
+    return modelRegistry;
+  }
+
+  // From the most accurate to the cheapest, starting from the tuned thread count. Fewer threads
+  // also leave more of a throttled CPU to the camera and the preprocessing.
+  private static LatencyController createLatencyController(final int numThreads) {
+    final int fewerThreads = Math.max(1, numThreads / 2);
+    return createLatencyController(
+        new OperatingPoint(numThreads, 1),
+        new OperatingPoint(numThreads, 2),
+        new OperatingPoint(fewerThreads, 2),
+        new OperatingPoint(fewerThreads, 3),
+        new OperatingPoint(1, 4));
+  }
+
+  // Keeps to a thread count picked by the user, only trading detection rate for latency.
+  private static LatencyController createFixedThreadsLatencyController(final int numThreads) {
+    return createLatencyController(
+        new OperatingPoint(numThreads, 1),
+        new OperatingPoint(numThreads, 2),
+        new OperatingPoint(numThreads, 3),
+        new OperatingPoint(numThreads, 4));
+  }
+
+  private static LatencyController createLatencyController(final OperatingPoint... points) {
+    return new LatencyController(
+        Arrays.asList(points),
+        TARGET_FRAME_MS,
+        LATENCY_WINDOW,
+        LATENCY_DOWNGRADE_MARGIN,
+        LATENCY_UPGRADE_MARGIN);
+  }
+
+  // Runs on the background thread, before the state's first detection. From then on, detections
+  // are timed with each candidate configuration in turn, see AutoTuner.Session.
+  private void startTuning(final DetectorState state) {
+    if (manualNumThreads > 0) {
+      // The user already picked a thread count.
+      return;
+    }
+    final AutoTuner.Session session = autoTuner.startSession(state.tuningKey);
+    state.tuningSession = session;
+    try {
+      applyTuningConfiguration(state, session.getConfiguration());
+    } catch (final IllegalStateException e) {
+      LOGGER.e(e, "Cannot tune %s", state.spec);
+      state.tuningSession = null;
+    }
+  }
+
+  // Runs on the background thread, after each detection while the state is being tuned.
+  private void continueTuning(final DetectorState state, final long latencyMs) {
+    final AutoTuner.Session session = state.tuningSession;
+    try {
+      applyTuningConfiguration(state, session.onLatency(latencyMs));
+    } catch (final IllegalStateException e) {
+      LOGGER.e(e, "Cannot tune %s", state.spec);
+      state.tuningSession = null;
+      return;
+    }
+    if (session.isDone()) {
+      state.tuningSession = null;
+      onTuned(state, session.getConfiguration());
+    }
+  }
+
+  // Applies a configuration, if any, moving on to the next one while the model cannot run with it.
+  // Throws IllegalStateException if it cannot run with any.
+  private static void applyTuningConfiguration(
+      final DetectorState state, final AutoTuner.Configuration configuration) {
+    AutoTuner.Configuration next = configuration;
+    while (next != null) {
+      try {
+        next.applyTo(state.detector);
+        return;
+      } catch (final RuntimeException e) {
+        LOGGER.w("Cannot run %s with %s: %s", state.spec, next, e);
+        next = state.tuningSession.skip();
+      }
+    }
+  }
+
+  // Runs on the background thread once a state has been tuned, and runs with the result.
+  private void onTuned(final DetectorState state, final AutoTuner.Configuration tuned) {
+    if (state != detectors.getCurrent()) {
+      return;
+    }
+    if (latencyController != null) {
+      latencyController = createLatencyController(tuned.numThreads);
+    }
+    runOnUiThread(() -> showInferenceOptions(tuned.numThreads, tuned.useNNAPI));
+  }
+
+  private DetectorState loadDetectorState(final ModelSpec spec) throws IOException {
+    final String tuningKey = AutoTuner.getKey(getAssets(), spec);
+    final AutoTuner.Configuration tuned = autoTuner.getStored(tuningKey);
+    // Warm up with the settings the model is going to run with.
+    AutoTuner.Configuration configuration = tuned;
+    final LatencyController controller = latencyController;
+    if (controller != null) {
+      configuration =
+          new AutoTuner.Configuration(
+              controller.getOperatingPoint().numThreads, tuned != null && tuned.useNNAPI);
+    }
+    final WarmUp warmUp = new WarmUp(WARM_UP_RUNS, configuration);
+    final Classifier detector = spec.create(getAssets(), warmUp);
+    return new DetectorState(
+        spec,
+        detector,
+        warmUp,
+        tuningKey,
+        tuned,
+        previewWidth,
+        previewHeight,
+        sensorOrientation);
+  }
+
+  // Runs on the camera thread, between frames, once the switcher has taken over a new state and
+  // queued closing the previous one.
+  private void onDetectorStateSwapped(final DetectorState previous) {
+    final DetectorState next = detectors.getCurrent();
+    synchronized (slotLock) {
+      // Frames waiting in the old slots are dropped. One may still be being detected on, which
+      // finishes with the old detector.
+      slots = next.slots;
+    }
+    applyRegion(regionLeft, regionTop, regionWidth, regionHeight);
+    if (motionGate != null) {
+      // Detect on the next frame with the new model, even if the scene is static.
+      motionGate.reset();
+    }
+    if (next.tunedConfiguration == null) {
+      runInBackground(() -> startTuning(next));
+    }
+    LOGGER.i("Switched from %s to %s", previous.spec, next.spec);
+  }
+
+  @Override
+  public synchronized void onResume() {
+    super.onResume();
+    // A detection that was scheduled as the previous background thread quit never ran.
+    synchronized (slotLock) {
+      detectionScheduled = false;
+    }
   }
 
   @Override
@@ -379,19 +994,135 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     return DESIRED_PREVIEW_SIZE;
   }
 
+  @Override
+  protected int getYuvConversionBands() {
+    return YUV_CONVERSION_BANDS;
+  }
+
   // Which detection model to use: by default uses Tensorflow Object Detection API frozen
   // checkpoints.
   private enum DetectorMode {
     TF_OD_API;
   }
 
+  private enum SlotState {
+    FREE,
+    FILLING,
+    READY,
+    INFERRING
+  }
+
+  /** A loaded model, together with the converter and slots shaped for its input. */
+  private static class DetectorState {
+    final ModelSpec spec;
+    final Classifier detector;
+    final WarmUp warmUp;
+    final String tuningKey;
+    // Null if the model has not been tuned on this device yet.
+    final AutoTuner.Configuration tunedConfiguration;
+    // Set while the model is being tuned on its detections. Only the inference thread touches it.
+    AutoTuner.Session tuningSession;
+    final int cropSize;
+    final boolean useFusedPreprocessing;
+    final YuvToInputConverter inputConverter;
+    final InferenceSlot[] slots = new InferenceSlot[2];
+    // Reused for every frame; only the inference thread touches it.
+    final DetectionBatch detections = new DetectionBatch(MAX_DETECTIONS);
+    // Null unless USE_DETECTION_CACHE is set. Kept per model, as the results of another model
+    // don't apply. Looked up on the camera thread and filled on the inference thread.
+    final DetectionCache cache =
+        USE_DETECTION_CACHE
+            ? new DetectionCache(
+                CACHE_SIZE,
+                MAX_DETECTIONS,
+                CACHE_MAX_DISTANCE,
+                CACHE_MAX_AGE_MS,
+                CACHE_AUDIT_INTERVAL)
+            : null;
+
+    DetectorState(
+        final ModelSpec spec,
+        final Classifier detector,
+        final WarmUp warmUp,
+        final String tuningKey,
+        final AutoTuner.Configuration tunedConfiguration,
+        final int frameWidth,
+        final int frameHeight,
+        final int sensorOrientation) {
+      this.spec = spec;
+      this.detector = detector;
+      this.warmUp = warmUp;
+      this.tuningKey = tuningKey;
+      this.tunedConfiguration = tunedConfiguration;
+      cropSize = spec.getInputSize();
+      useFusedPreprocessing = USE_FUSED_PREPROCESSING && spec.isQuantized();
+      inputConverter =
+          useFusedPreprocessing
+              ? new YuvToInputConverter(
+                  frameWidth, frameHeight, cropSize, sensorOrientation, MAINTAIN_ASPECT)
+              : null;
+      for (int i = 0; i < slots.length; ++i) {
+        slots[i] = new InferenceSlot(this);
+      }
+    }
+  }
+
+  /** Model input for one frame, together with what is needed to map its results to the frame. */
+  private static class InferenceSlot {
+    final DetectorState owner;
+    final ByteBuffer inputData;
+    final Bitmap croppedBitmap;
+    final Matrix cropToFrameTransform = new Matrix();
+    SlotState state = SlotState.FREE;
+    long timestamp;
+    // Perceptual hash of the frame and its region, if the owner has a cache.
+    long frameHash;
+    // Whether the frame's view was found in the cache, whose detections were then copied to
+    // cachedDetections. The input is not filled unless the hit is audited.
+    boolean cacheHit;
+    boolean auditCacheHit;
+    final DetectionBatch cachedDetections;
+
+    InferenceSlot(final DetectorState owner) {
+      this.owner = owner;
+      final int cropSize = owner.cropSize;
+      if (owner.useFusedPreprocessing) {
+        inputData = ByteBuffer.allocateDirect(cropSize * cropSize * 3);
+        inputData.order(ByteOrder.nativeOrder());
+        croppedBitmap = null;
+      } else {
+        inputData = null;
+        croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+      }
+      cachedDetections = owner.cache != null ? new DetectionBatch(MAX_DETECTIONS) : null;
+    }
+  }
+
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    runInBackground(
+        () -> {
+          // The user's choice ends tuning.
+          final DetectorState state = detectors.getCurrent();
+          state.tuningSession = null;
+          state.detector.setUseNNAPI(isChecked);
+        });
   }
 
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    runInBackground(
+        () -> {
+          manualNumThreads = numThreads;
+          // The user's choice ends tuning.
+          final DetectorState state = detectors.getCurrent();
+          state.tuningSession = null;
+          state.detector.setNumThreads(numThreads);
+          // Otherwise the next change of operating point would undo the user's choice.
+          if (latencyController != null) {
+            latencyController = createFixedThreadsLatencyController(numThreads);
+            inferenceInterval = latencyController.getOperatingPoint().inferenceInterval;
+          }
+        });
   }
 }
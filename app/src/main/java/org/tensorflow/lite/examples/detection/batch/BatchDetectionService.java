@@ -0,0 +1,291 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.batch;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Environment;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.ClassifierPool;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+
+/**
+ * Runs detection headlessly over a directory of captures, by default the CAAI_*.jpg files that the
+ * camera fragment saves to DCIM, and writes the detections to a CSV file. For example:
+ *
+ * <pre>
+ * adb shell am startservice \
+ *     -n org.tensorflow.lite.examples.detection/.batch.BatchDetectionService \
+ *     --es input_directory /sdcard/DCIM
+ * </pre>
+ *
+ * <p>Each detection becomes a row of file, label, confidence and left, top, right and bottom in
+ * the image's pixels. An image without detections gets a single row with only its file name.
+ */
+public class BatchDetectionService extends IntentService {
+  private static final Logger LOGGER = new Logger();
+
+  public static final String EXTRA_INPUT_DIRECTORY = "input_directory";
+  public static final String EXTRA_OUTPUT_FILE = "output_file";
+
+  private static final String CAPTURE_PREFIX = "CAAI_";
+  private static final String CAPTURE_SUFFIX = ".jpg";
+  private static final String DEFAULT_OUTPUT_FILE = "batch_detections.csv";
+
+  // Same model as DetectorActivity.
+  private static final int TF_OD_API_INPUT_SIZE = 300;
+  private static final boolean TF_OD_API_IS_QUANTIZED = true;
+  private static final String TF_OD_API_MODEL_FILE = "detect.tflite";
+  private static final String TF_OD_API_LABELS_FILE = "file:///android_asset/labelmap.txt";
+  private static final float MINIMUM_CONFIDENCE = 0.5f;
+
+  private static final int NUM_INSTANCES = 2;
+  private static final int NUM_THREADS_PER_INSTANCE = 2;
+  private static final int NUM_PREPARE_THREADS = 2;
+  private static final int QUEUE_CAPACITY = 4;
+
+  public BatchDetectionService() {
+    super("BatchDetectionService");
+  }
+
+  @Override
+  protected void onHandleIntent(final Intent intent) {
+    final String inputPath = intent != null ? intent.getStringExtra(EXTRA_INPUT_DIRECTORY) : null;
+    final String outputPath = intent != null ? intent.getStringExtra(EXTRA_OUTPUT_FILE) : null;
+    final File inputDirectory =
+        inputPath != null
+            ? new File(inputPath)
+            : Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM);
+    final File outputFile =
+        outputPath != null
+            ? new File(outputPath)
+            : new File(getExternalFilesDir(null), DEFAULT_OUTPUT_FILE);
+
+    final File[] captures =
+        inputDirectory.listFiles(
+            (directory, name) -> name.startsWith(CAPTURE_PREFIX) && name.endsWith(CAPTURE_SUFFIX));
+    if (captures == null) {
+      LOGGER.e("Cannot list %s", inputDirectory);
+      return;
+    }
+    Arrays.sort(captures);
+    LOGGER.i("Detecting on %d images from %s", captures.length, inputDirectory);
+
+    ClassifierPool pool = null;
+    try (final BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+      pool =
+          new ClassifierPool(
+              () ->
+                  TFLiteObjectDetectionAPIModel.create(
+                      getAssets(),
+                      TF_OD_API_MODEL_FILE,
+                      TF_OD_API_LABELS_FILE,
+                      TF_OD_API_INPUT_SIZE,
+                      TF_OD_API_IS_QUANTIZED),
+              NUM_INSTANCES,
+              NUM_THREADS_PER_INSTANCE);
+      final ClassifierPool classifier = pool;
+      final BatchPipeline<File, ScaledImage, List<Recognition>> pipeline =
+          new BatchPipeline<>(
+              BatchDetectionService::loadImage,
+              image -> detect(classifier, image),
+              NUM_PREPARE_THREADS,
+              NUM_INSTANCES,
+              QUEUE_CAPACITY);
+
+      writer.write("file,label,confidence,left,top,right,bottom\n");
+      final BatchPipeline.Stats stats =
+          pipeline.run(
+              Arrays.asList(captures).iterator(),
+              new BatchPipeline.Sink<File, List<Recognition>>() {
+                @Override
+                public void onResult(final File file, final List<Recognition> results)
+                    throws IOException {
+                  writeResults(writer, file.getName(), results);
+                }
+
+                @Override
+                public void onError(final File file, final Exception error) {
+                  LOGGER.e(error, "Detection failed on %s", file);
+                }
+              });
+      LOGGER.i("Batch detection done: %s, results in %s", stats, outputFile);
+    } catch (final Exception e) {
+      LOGGER.e(e, "Batch detection failed");
+    } finally {
+      if (pool != null) {
+        pool.close();
+      }
+    }
+  }
+
+  // The model input for an image, and the factors that map its coordinates back to the image.
+  private static class ScaledImage {
+    final Bitmap bitmap;
+    final float scaleX;
+    final float scaleY;
+
+    ScaledImage(final Bitmap bitmap, final float scaleX, final float scaleY) {
+      this.bitmap = bitmap;
+      this.scaleX = scaleX;
+      this.scaleY = scaleY;
+    }
+  }
+
+  private static ScaledImage loadImage(final File file) throws IOException {
+    // Subsample while decoding, as long as the image stays at least as large as the input.
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(file.getPath(), options);
+    final int width = options.outWidth;
+    final int height = options.outHeight;
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Cannot decode " + file);
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = 1;
+    while (Math.min(width, height) / (options.inSampleSize * 2) >= TF_OD_API_INPUT_SIZE) {
+      options.inSampleSize *= 2;
+    }
+
+    final Bitmap decoded = BitmapFactory.decodeFile(file.getPath(), options);
+    if (decoded == null) {
+      throw new IOException("Cannot decode " + file);
+    }
+    final Bitmap scaled =
+        Bitmap.createScaledBitmap(decoded, TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE, true);
+    if (scaled != decoded) {
+      decoded.recycle();
+    }
+
+    // Detect on the image the way it is meant to be viewed. The input is square, so it is cheaper
+    // to orient once scaled down.
+    final int orientation =
+        new ExifInterface(file.getPath())
+            .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    final Matrix matrix = new Matrix();
+    final boolean transposed = orient(orientation, matrix);
+    if (matrix.isIdentity()) {
+      return new ScaledImage(
+          scaled, width / (float) TF_OD_API_INPUT_SIZE, height / (float) TF_OD_API_INPUT_SIZE);
+    }
+    final Bitmap oriented =
+        Bitmap.createBitmap(scaled, 0, 0, scaled.getWidth(), scaled.getHeight(), matrix, true);
+    if (oriented != scaled) {
+      scaled.recycle();
+    }
+    final int orientedWidth = transposed ? height : width;
+    final int orientedHeight = transposed ? width : height;
+    return new ScaledImage(
+        oriented,
+        orientedWidth / (float) TF_OD_API_INPUT_SIZE,
+        orientedHeight / (float) TF_OD_API_INPUT_SIZE);
+  }
+
+  // Sets matrix to turn an image stored with the given EXIF orientation upright, and returns
+  // whether that swaps its width and height.
+  private static boolean orient(final int orientation, final Matrix matrix) {
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        matrix.postScale(-1, 1);
+        return false;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        matrix.postRotate(180);
+        return false;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        matrix.postScale(1, -1);
+        return false;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        matrix.postRotate(90);
+        matrix.postScale(-1, 1);
+        return true;
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        matrix.postRotate(90);
+        return true;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        matrix.postRotate(-90);
+        matrix.postScale(-1, 1);
+        return true;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        matrix.postRotate(-90);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static List<Recognition> detect(
+      final ClassifierPool classifier,
+      final ScaledImage image) {
+    final List<Recognition> results;
+    try {
+      results = classifier.recognizeImage(image.bitmap);
+    } finally {
+      image.bitmap.recycle();
+    }
+    for (final Recognition result : results) {
+      final RectF location = result.getLocation();
+      location.left *= image.scaleX;
+      location.right *= image.scaleX;
+      location.top *= image.scaleY;
+      location.bottom *= image.scaleY;
+      result.setLocation(location);
+    }
+    return results;
+  }
+
+  private static void writeResults(
+      final BufferedWriter writer,
+      final String fileName,
+      final List<Recognition> results)
+      throws IOException {
+    boolean any = false;
+    for (final Recognition result : results) {
+      if (result.getConfidence() < MINIMUM_CONFIDENCE) {
+        continue;
+      }
+      final RectF location = result.getLocation();
+      writer.write(
+          String.format(
+              Locale.US,
+              "%s,%s,%.3f,%.0f,%.0f,%.0f,%.0f\n",
+              fileName,
+              result.getTitle(),
+              result.getConfidence(),
+              location.left,
+              location.top,
+              location.right,
+              location.bottom));
+      any = true;
+    }
+    if (!any) {
+      writer.write(fileName + ",,,,,,\n");
+    }
+  }
+}
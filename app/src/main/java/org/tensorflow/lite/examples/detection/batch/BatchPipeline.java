@@ -0,0 +1,246 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.batch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams sources, e.g. image files, through a prepare stage and a detect stage into a sink, each
+ * stage on its own threads. The stages are connected by bounded queues, so a slow stage holds the
+ * ones before it back instead of letting prepared inputs pile up in memory.
+ *
+ * <p>Has no Android dependencies, so it can be driven with a fake detector on a plain JVM.
+ *
+ * @param <S> Source of one input, e.g. a file.
+ * @param <T> Prepared input, e.g. a decoded and scaled bitmap.
+ * @param <R> Detection result.
+ */
+public class BatchPipeline<S, T, R> {
+  /** Turns a source into detector input. Called concurrently from the prepare threads. */
+  public interface Preparer<S, T> {
+    T prepare(S source) throws Exception;
+  }
+
+  /** Runs detection. Called concurrently from the detect threads. */
+  public interface Detector<T, R> {
+    R detect(T input) throws Exception;
+  }
+
+  /** Receives the outcome for every source, in completion order, on the thread calling run(). */
+  public interface Sink<S, R> {
+    void onResult(S source, R result) throws Exception;
+
+    void onError(S source, Exception error) throws Exception;
+  }
+
+  /** Totals of a run. */
+  public static class Stats {
+    public final int succeeded;
+    public final int failed;
+    public final long elapsedMs;
+
+    Stats(final int succeeded, final int failed, final long elapsedMs) {
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.elapsedMs = elapsedMs;
+    }
+
+    public float getImagesPerSecond() {
+      return (succeeded + failed) * 1000.0f / Math.max(1, elapsedMs);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d succeeded, %d failed in %dms (%.1f images/s)",
+          succeeded, failed, elapsedMs, getImagesPerSecond());
+    }
+  }
+
+  // An item travelling between the stages. An item without a source marks the end of the stream.
+  private static class Item<S, T, R> {
+    final S source;
+    T input;
+    R result;
+    Exception error;
+
+    Item(final S source) {
+      this.source = source;
+    }
+  }
+
+  private final Preparer<S, T> preparer;
+  private final Detector<T, R> detector;
+  private final int numPrepareThreads;
+  private final int numDetectThreads;
+  private final int queueCapacity;
+
+  /**
+   * @param numPrepareThreads Threads running the preparer.
+   * @param numDetectThreads Threads running the detector, which must be thread safe if this is more
+   *     than one, e.g. a ClassifierPool.
+   * @param queueCapacity Number of items each queue between the stages can hold.
+   */
+  public BatchPipeline(
+      final Preparer<S, T> preparer,
+      final Detector<T, R> detector,
+      final int numPrepareThreads,
+      final int numDetectThreads,
+      final int queueCapacity) {
+    if (numPrepareThreads < 1 || numDetectThreads < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("Need at least one thread and queue slot per stage");
+    }
+    this.preparer = preparer;
+    this.detector = detector;
+    this.numPrepareThreads = numPrepareThreads;
+    this.numDetectThreads = numDetectThreads;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Runs all sources through the pipeline, returning once the sink has seen every one of them. If
+   * the sink throws, the pipeline is stopped and the exception is rethrown. If a stage throws an
+   * Error, e.g. an OutOfMemoryError, its thread stops but the others drain the pipeline, and the
+   * Error is rethrown once they are done.
+   *
+   * @param sources The sources to process, none of which may be null. Only accessed while
+   *     synchronized on the iterator.
+   */
+  public Stats run(final Iterator<S> sources, final Sink<S, R> sink) throws Exception {
+    final long startTime = System.nanoTime();
+    final BlockingQueue<Item<S, T, R>> prepared = new ArrayBlockingQueue<>(queueCapacity);
+    final BlockingQueue<Item<S, T, R>> detected = new ArrayBlockingQueue<>(queueCapacity);
+    final List<Thread> threads = new ArrayList<>(numPrepareThreads + numDetectThreads);
+    final AtomicReference<Error> failure = new AtomicReference<>();
+    // Set before the threads are interrupted, after which none of them may block on a queue.
+    final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    final AtomicInteger preparersLeft = new AtomicInteger(numPrepareThreads);
+    for (int i = 0; i < numPrepareThreads; ++i) {
+      threads.add(
+          new Thread("batch-prepare-" + i) {
+            @Override
+            public void run() {
+              try {
+                try {
+                  S source;
+                  while ((source = next(sources)) != null) {
+                    final Item<S, T, R> item = new Item<>(source);
+                    try {
+                      item.input = preparer.prepare(source);
+                    } catch (final Exception e) {
+                      item.error = e;
+                    }
+                    prepared.put(item);
+                  }
+                } catch (final Error e) {
+                  failure.compareAndSet(null, e);
+                } finally {
+                  // The last preparer to finish, however it finished, tells every detect thread
+                  // to stop.
+                  if (preparersLeft.decrementAndGet() == 0 && !stopped.get()) {
+                    for (int j = 0; j < numDetectThreads; ++j) {
+                      prepared.put(new Item<S, T, R>(null));
+                    }
+                  }
+                }
+              } catch (final InterruptedException e) {
+                // Stopped by run().
+              }
+            }
+          });
+    }
+
+    final AtomicInteger detectorsLeft = new AtomicInteger(numDetectThreads);
+    for (int i = 0; i < numDetectThreads; ++i) {
+      threads.add(
+          new Thread("batch-detect-" + i) {
+            @Override
+            public void run() {
+              try {
+                try {
+                  Item<S, T, R> item;
+                  while ((item = prepared.take()).source != null) {
+                    if (item.error == null) {
+                      try {
+                        item.result = detector.detect(item.input);
+                      } catch (final Exception e) {
+                        item.error = e;
+                      }
+                    }
+                    item.input = null;
+                    detected.put(item);
+                  }
+                } catch (final Error e) {
+                  failure.compareAndSet(null, e);
+                } finally {
+                  if (detectorsLeft.decrementAndGet() == 0 && !stopped.get()) {
+                    detected.put(new Item<S, T, R>(null));
+                  }
+                }
+              } catch (final InterruptedException e) {
+                // Stopped by run().
+              }
+            }
+          });
+    }
+
+    for (final Thread thread : threads) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int succeeded = 0;
+    int failed = 0;
+    try {
+      Item<S, T, R> item;
+      while ((item = detected.take()).source != null) {
+        if (item.error == null) {
+          sink.onResult(item.source, item.result);
+          ++succeeded;
+        } else {
+          sink.onError(item.source, item.error);
+          ++failed;
+        }
+      }
+    } finally {
+      // Only has an effect if the sink failed, as the threads have finished otherwise.
+      stopped.set(true);
+      for (final Thread thread : threads) {
+        thread.interrupt();
+      }
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    return new Stats(succeeded, failed, (System.nanoTime() - startTime) / 1000000);
+  }
+
+  private static <S> S next(final Iterator<S> sources) {
+    synchronized (sources) {
+      return sources.hasNext() ? sources.next() : null;
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Geometric operations on packed ARGB ({@code int[]}) and single channel ({@code byte[]}) images,
+ * independent of {@link android.graphics.Bitmap}. Images are row-major with no padding between
+ * rows. Sampling positions and interpolation weights are computed in integer arithmetic, and every
+ * method writes to a caller supplied buffer, so nothing is allocated per call (except a row of
+ * scratch space for an in-place vertical flip).
+ *
+ * <p>Resampling follows the same convention as {@link ImageUtils#getTransformationMatrix} with
+ * {@link android.graphics.Canvas#drawBitmap}: each destination pixel's center is mapped into the
+ * source, and rotations are clockwise.
+ */
+public final class ImageOps {
+  // Fractional bits of the fixed point source coordinates.
+  private static final int SHIFT = 16;
+  private static final int ONE = 1 << SHIFT;
+
+  private ImageOps() {}
+
+  // Nearest neighbour
+
+  /** Resizes with nearest neighbour sampling. */
+  public static void resizeNearest(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    // Pixel i samples source pixel floor((2i + 1) * srcSize / (2 * dstSize)), stepped as a
+    // quotient and remainder so that centers on a pixel edge round as they do in drawBitmap.
+    final int denominatorX = 2 * dstWidth;
+    final int denominatorY = 2 * dstHeight;
+    final int stepX = 2 * srcWidth / denominatorX;
+    final int stepY = 2 * srcHeight / denominatorY;
+    final int stepRemainderX = 2 * srcWidth % denominatorX;
+    final int stepRemainderY = 2 * srcHeight % denominatorY;
+    int p = 0;
+    int sy = srcHeight / denominatorY;
+    int remainderY = srcHeight % denominatorY;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int row = sy * srcWidth;
+      int sx = srcWidth / denominatorX;
+      int remainderX = srcWidth % denominatorX;
+      for (int i = 0; i < dstWidth; ++i) {
+        dst[p++] = src[row + sx];
+        sx += stepX;
+        remainderX += stepRemainderX;
+        if (remainderX >= denominatorX) {
+          remainderX -= denominatorX;
+          ++sx;
+        }
+      }
+      sy += stepY;
+      remainderY += stepRemainderY;
+      if (remainderY >= denominatorY) {
+        remainderY -= denominatorY;
+        ++sy;
+      }
+    }
+  }
+
+  /** Resizes a single channel image with nearest neighbour sampling. */
+  public static void resizeNearest(
+      final byte[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final byte[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    // Pixel i samples source pixel floor((2i + 1) * srcSize / (2 * dstSize)), stepped as a
+    // quotient and remainder so that centers on a pixel edge round as they do in drawBitmap.
+    final int denominatorX = 2 * dstWidth;
+    final int denominatorY = 2 * dstHeight;
+    final int stepX = 2 * srcWidth / denominatorX;
+    final int stepY = 2 * srcHeight / denominatorY;
+    final int stepRemainderX = 2 * srcWidth % denominatorX;
+    final int stepRemainderY = 2 * srcHeight % denominatorY;
+    int p = 0;
+    int sy = srcHeight / denominatorY;
+    int remainderY = srcHeight % denominatorY;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int row = sy * srcWidth;
+      int sx = srcWidth / denominatorX;
+      int remainderX = srcWidth % denominatorX;
+      for (int i = 0; i < dstWidth; ++i) {
+        dst[p++] = src[row + sx];
+        sx += stepX;
+        remainderX += stepRemainderX;
+        if (remainderX >= denominatorX) {
+          remainderX -= denominatorX;
+          ++sx;
+        }
+      }
+      sy += stepY;
+      remainderY += stepRemainderY;
+      if (remainderY >= denominatorY) {
+        remainderY -= denominatorY;
+        ++sy;
+      }
+    }
+  }
+
+  // Bilinear
+
+  /**
+   * Resizes with bilinear filtering, using 8 bit interpolation weights. All four channels are
+   * interpolated, two at a time in the halves of a single int.
+   */
+  public static void resizeBilinear(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    final int stepX = step(srcWidth, dstWidth);
+    final int stepY = step(srcHeight, dstHeight);
+    int p = 0;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int sy = centerToSource(j, stepY, srcHeight);
+      final int row0 = (sy >> SHIFT) * srcWidth;
+      final int row1 = Math.min((sy >> SHIFT) + 1, srcHeight - 1) * srcWidth;
+      final int fy = (sy >> (SHIFT - 8)) & 0xff;
+      for (int i = 0; i < dstWidth; ++i) {
+        final int sx = centerToSource(i, stepX, srcWidth);
+        final int x0 = sx >> SHIFT;
+        final int x1 = Math.min(x0 + 1, srcWidth - 1);
+        final int fx = (sx >> (SHIFT - 8)) & 0xff;
+        final int top = lerpArgb(src[row0 + x0], src[row0 + x1], fx);
+        final int bottom = lerpArgb(src[row1 + x0], src[row1 + x1], fx);
+        dst[p++] = lerpArgb(top, bottom, fy);
+      }
+    }
+  }
+
+  /** Resizes a single channel image with bilinear filtering, using 8 bit weights. */
+  public static void resizeBilinear(
+      final byte[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final byte[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    final int stepX = step(srcWidth, dstWidth);
+    final int stepY = step(srcHeight, dstHeight);
+    int p = 0;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int sy = centerToSource(j, stepY, srcHeight);
+      final int row0 = (sy >> SHIFT) * srcWidth;
+      final int row1 = Math.min((sy >> SHIFT) + 1, srcHeight - 1) * srcWidth;
+      final int fy = (sy >> (SHIFT - 8)) & 0xff;
+      for (int i = 0; i < dstWidth; ++i) {
+        final int sx = centerToSource(i, stepX, srcWidth);
+        final int x0 = sx >> SHIFT;
+        final int x1 = Math.min(x0 + 1, srcWidth - 1);
+        final int fx = (sx >> (SHIFT - 8)) & 0xff;
+        final int topLeft = src[row0 + x0] & 0xff;
+        final int bottomLeft = src[row1 + x0] & 0xff;
+        final int top = (topLeft << 8) + ((src[row0 + x1] & 0xff) - topLeft) * fx;
+        final int bottom = (bottomLeft << 8) + ((src[row1 + x1] & 0xff) - bottomLeft) * fx;
+        dst[p++] = (byte) (((top << 8) + (bottom - top) * fy + (1 << 15)) >> 16);
+      }
+    }
+  }
+
+  // Area average
+
+  /**
+   * Downscales by averaging the block of source pixels that falls into each destination pixel.
+   * When the ratio is not an integer, a source pixel that straddles two blocks is counted in the
+   * one its left/top edge falls into. Upscaling degenerates to nearest neighbour.
+   */
+  public static void resizeArea(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    int p = 0;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int y0 = blockStart(j, srcHeight, dstHeight);
+      final int y1 = blockEnd(j, srcHeight, dstHeight, y0);
+      for (int i = 0; i < dstWidth; ++i) {
+        final int x0 = blockStart(i, srcWidth, dstWidth);
+        final int x1 = blockEnd(i, srcWidth, dstWidth, x0);
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int y = y0; y < y1; ++y) {
+          final int row = y * srcWidth;
+          for (int x = x0; x < x1; ++x) {
+            final int pixel = src[row + x];
+            a += pixel >>> 24;
+            r += (pixel >> 16) & 0xff;
+            g += (pixel >> 8) & 0xff;
+            b += pixel & 0xff;
+          }
+        }
+        final int count = (y1 - y0) * (x1 - x0);
+        final int half = count >> 1;
+        dst[p++] =
+            (((a + half) / count) << 24)
+                | (((r + half) / count) << 16)
+                | (((g + half) / count) << 8)
+                | ((b + half) / count);
+      }
+    }
+  }
+
+  /** Single channel version of {@link #resizeArea(int[], int, int, int[], int, int)}. */
+  public static void resizeArea(
+      final byte[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final byte[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, dstWidth, dstHeight);
+    int p = 0;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int y0 = blockStart(j, srcHeight, dstHeight);
+      final int y1 = blockEnd(j, srcHeight, dstHeight, y0);
+      for (int i = 0; i < dstWidth; ++i) {
+        final int x0 = blockStart(i, srcWidth, dstWidth);
+        final int x1 = blockEnd(i, srcWidth, dstWidth, x0);
+        int sum = 0;
+        for (int y = y0; y < y1; ++y) {
+          final int row = y * srcWidth;
+          for (int x = x0; x < x1; ++x) {
+            sum += src[row + x] & 0xff;
+          }
+        }
+        final int count = (y1 - y0) * (x1 - x0);
+        dst[p++] = (byte) ((sum + (count >> 1)) / count);
+      }
+    }
+  }
+
+  // Rotation, flips and crops
+
+  /**
+   * Rotates clockwise by a multiple of 90 degrees. For 90 and 270 the destination is srcHeight
+   * wide and srcWidth high. The destination must not be the source.
+   */
+  public static void rotate(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int rotation,
+      final int[] dst) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, srcWidth, srcHeight);
+    final int applyRotation = normalizeRotation(rotation);
+    int p = 0;
+    for (int y = 0; y < srcHeight; ++y) {
+      for (int x = 0; x < srcWidth; ++x, ++p) {
+        dst[rotatedIndex(x, y, srcWidth, srcHeight, applyRotation)] = src[p];
+      }
+    }
+  }
+
+  /** Single channel version of {@link #rotate(int[], int, int, int, int[])}. */
+  public static void rotate(
+      final byte[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int rotation,
+      final byte[] dst) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, srcWidth, srcHeight);
+    final int applyRotation = normalizeRotation(rotation);
+    int p = 0;
+    for (int y = 0; y < srcHeight; ++y) {
+      for (int x = 0; x < srcWidth; ++x, ++p) {
+        dst[rotatedIndex(x, y, srcWidth, srcHeight, applyRotation)] = src[p];
+      }
+    }
+  }
+
+  /** Mirrors left-right if {@code horizontal}, otherwise top-bottom. May be done in place. */
+  public static void flip(
+      final int[] src,
+      final int width,
+      final int height,
+      final boolean horizontal,
+      final int[] dst) {
+    checkSize(src.length, width, height);
+    checkSize(dst.length, width, height);
+    if (horizontal) {
+      for (int y = 0; y < height; ++y) {
+        final int row = y * width;
+        for (int l = row, r = row + width - 1; l <= r; ++l, --r) {
+          final int left = src[l];
+          dst[l] = src[r];
+          dst[r] = left;
+        }
+      }
+    } else {
+      final int[] temp = src == dst ? new int[width] : null;
+      for (int t = 0, b = height - 1; t <= b; ++t, --b) {
+        if (temp != null) {
+          System.arraycopy(src, t * width, temp, 0, width);
+          System.arraycopy(src, b * width, dst, t * width, width);
+          System.arraycopy(temp, 0, dst, b * width, width);
+        } else {
+          System.arraycopy(src, b * width, dst, t * width, width);
+          System.arraycopy(src, t * width, dst, b * width, width);
+        }
+      }
+    }
+  }
+
+  /** Single channel version of {@link #flip(int[], int, int, boolean, int[])}. */
+  public static void flip(
+      final byte[] src,
+      final int width,
+      final int height,
+      final boolean horizontal,
+      final byte[] dst) {
+    checkSize(src.length, width, height);
+    checkSize(dst.length, width, height);
+    if (horizontal) {
+      for (int y = 0; y < height; ++y) {
+        final int row = y * width;
+        for (int l = row, r = row + width - 1; l <= r; ++l, --r) {
+          final byte left = src[l];
+          dst[l] = src[r];
+          dst[r] = left;
+        }
+      }
+    } else {
+      final byte[] temp = src == dst ? new byte[width] : null;
+      for (int t = 0, b = height - 1; t <= b; ++t, --b) {
+        if (temp != null) {
+          System.arraycopy(src, t * width, temp, 0, width);
+          System.arraycopy(src, b * width, dst, t * width, width);
+          System.arraycopy(temp, 0, dst, b * width, width);
+        } else {
+          System.arraycopy(src, b * width, dst, t * width, width);
+          System.arraycopy(src, t * width, dst, b * width, width);
+        }
+      }
+    }
+  }
+
+  /** Copies the given rectangle of the source into a cropWidth x cropHeight destination. */
+  public static void crop(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int left,
+      final int top,
+      final int cropWidth,
+      final int cropHeight,
+      final int[] dst) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, cropWidth, cropHeight);
+    checkCrop(srcWidth, srcHeight, left, top, cropWidth, cropHeight);
+    for (int y = 0; y < cropHeight; ++y) {
+      System.arraycopy(src, (top + y) * srcWidth + left, dst, y * cropWidth, cropWidth);
+    }
+  }
+
+  /** Single channel version of {@link #crop(int[], int, int, int, int, int, int, int[])}. */
+  public static void crop(
+      final byte[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int left,
+      final int top,
+      final int cropWidth,
+      final int cropHeight,
+      final byte[] dst) {
+    checkSize(src.length, srcWidth, srcHeight);
+    checkSize(dst.length, cropWidth, cropHeight);
+    checkCrop(srcWidth, srcHeight, left, top, cropWidth, cropHeight);
+    for (int y = 0; y < cropHeight; ++y) {
+      System.arraycopy(src, (top + y) * srcWidth + left, dst, y * cropWidth, cropWidth);
+    }
+  }
+
+  // Helpers
+
+  private static void checkSize(final int length, final int width, final int height) {
+    if (width <= 0 || height <= 0 || length < width * height) {
+      throw new IllegalArgumentException(
+          "Buffer of length " + length + " cannot hold a " + width + "x" + height + " image");
+    }
+  }
+
+  private static void checkCrop(
+      final int srcWidth,
+      final int srcHeight,
+      final int left,
+      final int top,
+      final int cropWidth,
+      final int cropHeight) {
+    if (left < 0 || top < 0 || left + cropWidth > srcWidth || top + cropHeight > srcHeight) {
+      throw new IllegalArgumentException(
+          "Crop " + cropWidth + "x" + cropHeight + "+" + left + "+" + top
+              + " is outside the " + srcWidth + "x" + srcHeight + " source");
+    }
+  }
+
+  private static int normalizeRotation(final int rotation) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation of " + rotation + " is not a multiple of 90");
+    }
+    return ((rotation % 360) + 360) % 360;
+  }
+
+  // Fixed point distance in the source between adjacent destination pixel centers.
+  private static int step(final int srcSize, final int dstSize) {
+    return (int) (((long) srcSize << SHIFT) / dstSize);
+  }
+
+  // Source position, minus half a pixel, of the center of destination pixel i; clamped at 0.
+  private static int centerToSource(final int i, final int step, final int srcSize) {
+    final int position = i * step + (step >> 1) - (ONE >> 1);
+    return position < 0 ? 0 : Math.min(position, (srcSize - 1) << SHIFT);
+  }
+
+  private static int blockStart(final int i, final int srcSize, final int dstSize) {
+    return (int) ((long) i * srcSize / dstSize);
+  }
+
+  private static int blockEnd(final int i, final int srcSize, final int dstSize, final int start) {
+    final int end = (int) ((long) (i + 1) * srcSize / dstSize);
+    return end > start ? end : start + 1;
+  }
+
+  private static int rotatedIndex(
+      final int x,
+      final int y,
+      final int width,
+      final int height,
+      final int rotation) {
+    switch (rotation) {
+      case 90:
+        return x * height + (height - 1 - y);
+      case 180:
+        return (height - 1 - y) * width + (width - 1 - x);
+      case 270:
+        return (width - 1 - x) * height + y;
+      default:
+        return y * width + x;
+    }
+  }
+
+  // Interpolates each byte of a and b by weight / 256, rounded, two bytes per multiply.
+  private static int lerpArgb(final int a, final int b, final int weight) {
+    final int inverse = 256 - weight;
+    final int redBlue =
+        (((a & 0xff00ff) * inverse + (b & 0xff00ff) * weight + 0x800080) >>> 8) & 0xff00ff;
+    final int alphaGreen =
+        (((a >>> 8) & 0xff00ff) * inverse + ((b >>> 8) & 0xff00ff) * weight + 0x800080)
+            & 0xff00ff00;
+    return alphaGreen | redBlue;
+  }
+}
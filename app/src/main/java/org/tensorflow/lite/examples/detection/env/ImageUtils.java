@@ -20,6 +20,7 @@ import android.graphics.Matrix;
 import android.os.Environment;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 
 /** Utility class for manipulating images. */
 public class ImageUtils {
@@ -86,8 +87,39 @@ public class ImageUtils {
   }
 
   public static void convertYUV420SPToARGB8888(byte[] input, int width, int height, int[] output) {
+    convertYUV420SPToARGB8888(input, width, height, output, false);
+  }
+
+  /**
+   * Converts an NV21 frame to ARGB_8888.
+   *
+   * @param useLookupTable If true, uses the precomputed tables in {@link YuvLookupTable} instead
+   *     of computing each pixel. The output is identical either way.
+   */
+  public static void convertYUV420SPToARGB8888(
+      byte[] input, int width, int height, int[] output, boolean useLookupTable) {
+    convertYUV420SPToARGB8888(input, width, height, output, useLookupTable, 0, height);
+  }
+
+  /**
+   * Converts rows [startRow, endRow) of an NV21 frame to ARGB_8888, leaving the rest of the output
+   * untouched. Disjoint row ranges may be converted concurrently.
+   */
+  public static void convertYUV420SPToARGB8888(
+      byte[] input,
+      int width,
+      int height,
+      int[] output,
+      boolean useLookupTable,
+      int startRow,
+      int endRow) {
+    if (useLookupTable) {
+      YuvLookupTable.convertNV21Rows(input, width, height, output, startRow, endRow);
+      return;
+    }
+
     final int frameSize = width * height;
-    for (int j = 0, yp = 0; j < height; j++) {
+    for (int j = startRow, yp = startRow * width; j < endRow; j++) {
       int uvp = frameSize + (j >> 1) * width;
       int u = 0;
       int v = 0;
@@ -104,7 +136,8 @@ public class ImageUtils {
     }
   }
 
-  private static int YUV2RGB(int y, int u, int v) {
+  // Package private so that faster conversions can be tested against it.
+  static int YUV2RGB(int y, int u, int v) {
     // Adjust and check YUV values
     y = (y - 16) < 0 ? 0 : (y - 16);
     u -= 128;
@@ -138,11 +171,75 @@ public class ImageUtils {
       int uvRowStride,
       int uvPixelStride,
       int[] out) {
-    int yp = 0;
-    for (int j = 0; j < height; j++) {
+    convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out, false);
+  }
+
+  /**
+   * Converts a YUV_420_888 frame to ARGB_8888.
+   *
+   * @param useLookupTable If true, uses the precomputed tables in {@link YuvLookupTable} instead
+   *     of computing each pixel. The output is identical either way.
+   */
+  public static void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out,
+      boolean useLookupTable) {
+    convertYUV420ToARGB8888(
+        yData,
+        uData,
+        vData,
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        out,
+        useLookupTable,
+        0,
+        height);
+  }
+
+  /**
+   * Converts rows [startRow, endRow) of a YUV_420_888 frame to ARGB_8888, leaving the rest of the
+   * output untouched. Disjoint row ranges may be converted concurrently.
+   */
+  public static void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out,
+      boolean useLookupTable,
+      int startRow,
+      int endRow) {
+    int yp = startRow * width;
+    for (int j = startRow; j < endRow; j++) {
       int pY = yRowStride * j;
       int pUV = uvRowStride * (j >> 1);
 
+      if (useLookupTable) {
+        for (int i = 0; i < width; i++) {
+          int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+          out[yp++] =
+              YuvLookupTable.yuvToArgb(
+                  0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+        }
+        continue;
+      }
+
       for (int i = 0; i < width; i++) {
         int uv_offset = pUV + (i >> 1) * uvPixelStride;
 
@@ -151,6 +248,67 @@ public class ImageUtils {
     }
   }
 
+  /**
+   * Converts rows [startRow, endRow) of a YUV_420_888 frame to ARGB_8888, reading the planes in
+   * place. Indices into the plane buffers are absolute, so their positions are ignored and they
+   * can be the buffers of an open {@link android.media.Image} without copying them first.
+   *
+   * <p>With the lookup table, semi-planar (chroma pixel stride 2) and planar (pixel stride 1)
+   * layouts are dispatched to kernels that convert two pixels per chroma sample.
+   */
+  public static void convertYUV420ToARGB8888(
+      ByteBuffer yBuffer,
+      ByteBuffer uBuffer,
+      ByteBuffer vBuffer,
+      int width,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out,
+      boolean useLookupTable,
+      int startRow,
+      int endRow) {
+    if (useLookupTable && uvPixelStride == 2) {
+      YuvLookupTable.convertSemiPlanarRows(
+          yBuffer, uBuffer, vBuffer, width, yRowStride, uvRowStride, out, startRow, endRow);
+      return;
+    }
+    if (useLookupTable && uvPixelStride == 1) {
+      YuvLookupTable.convertPlanarRows(
+          yBuffer, uBuffer, vBuffer, width, yRowStride, uvRowStride, out, startRow, endRow);
+      return;
+    }
+
+    int yp = startRow * width;
+    for (int j = startRow; j < endRow; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      if (useLookupTable) {
+        for (int i = 0; i < width; i++) {
+          int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+          out[yp++] =
+              YuvLookupTable.yuvToArgb(
+                  0xff & yBuffer.get(pY + i),
+                  0xff & uBuffer.get(uv_offset),
+                  0xff & vBuffer.get(uv_offset));
+        }
+        continue;
+      }
+
+      for (int i = 0; i < width; i++) {
+        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+        out[yp++] =
+            YUV2RGB(
+                0xff & yBuffer.get(pY + i),
+                0xff & uBuffer.get(uv_offset),
+                0xff & vBuffer.get(uv_offset));
+      }
+    }
+  }
+
   /**
    * Returns a transformation matrix from one reference frame into another. Handles cropping (if
    * maintaining aspect ratio is desired) and rotation.
@@ -0,0 +1,149 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks an operating point, i.e. a thread count and inference interval, that keeps the detection
+ * cost per camera frame near a target, e.g. as the device heats up and throttles.
+ *
+ * <p>The cost of a detection is its latency divided by the inference interval of the point it ran
+ * at, and decisions are made on the mean over a window of detections. The controller moves one
+ * point cheaper when the mean is above the target by more than a margin, and one point more
+ * expensive when it is well below. Each decision starts a new window, and moving back to a point
+ * that was just left for being too slow waits twice as long every time it happens, so the
+ * controller settles instead of oscillating between two points.
+ */
+public class LatencyController {
+  private static final Logger LOGGER = new Logger();
+
+  // Windows to wait before moving back up to a point, at first and at most.
+  private static final int MIN_HOLDOFF = 1;
+  private static final int MAX_HOLDOFF = 64;
+
+  /** A combination of settings to run detection with. */
+  public static class OperatingPoint {
+    public final int numThreads;
+    public final int inferenceInterval;
+
+    /**
+     * @param numThreads Number of threads to run the model with.
+     * @param inferenceInterval Detect on every this many camera frames.
+     */
+    public OperatingPoint(final int numThreads, final int inferenceInterval) {
+      if (numThreads < 1 || inferenceInterval < 1) {
+        throw new IllegalArgumentException("Need at least one thread and an interval of one");
+      }
+      this.numThreads = numThreads;
+      this.inferenceInterval = inferenceInterval;
+    }
+
+    @Override
+    public String toString() {
+      return numThreads + " threads, every " + inferenceInterval + " frames";
+    }
+  }
+
+  private final List<OperatingPoint> points;
+  private final float targetFrameMs;
+  private final float downgradeMargin;
+  private final float upgradeMargin;
+  private final int windowSize;
+  // Windows to wait before moving back up to each point, doubled every time it is left.
+  private final int[] holdoffs;
+
+  private int current = 0;
+  private int numSamples = 0;
+  private long sampleSum = 0;
+  private int windowsSinceChange = 0;
+
+  /**
+   * @param points Operating points from the most accurate and expensive to the cheapest.
+   * @param targetFrameMs Detection cost per camera frame to aim for.
+   * @param windowSize Number of detections each decision is based on.
+   * @param downgradeMargin Move to a cheaper point above targetFrameMs * (1 + downgradeMargin).
+   * @param upgradeMargin Move to a more expensive point below targetFrameMs * (1 - upgradeMargin).
+   */
+  public LatencyController(
+      final List<OperatingPoint> points,
+      final float targetFrameMs,
+      final int windowSize,
+      final float downgradeMargin,
+      final float upgradeMargin) {
+    if (points.isEmpty() || windowSize < 1) {
+      throw new IllegalArgumentException("Need at least one operating point and sample");
+    }
+    if (downgradeMargin < 0 || upgradeMargin < 0 || upgradeMargin >= 1) {
+      throw new IllegalArgumentException("Margins must be in [0, 1)");
+    }
+    this.points = new ArrayList<OperatingPoint>(points);
+    this.targetFrameMs = targetFrameMs;
+    this.downgradeMargin = downgradeMargin;
+    this.upgradeMargin = upgradeMargin;
+    this.windowSize = windowSize;
+    holdoffs = new int[points.size()];
+    Arrays.fill(holdoffs, MIN_HOLDOFF);
+  }
+
+  public synchronized OperatingPoint getOperatingPoint() {
+    return points.get(current);
+  }
+
+  /**
+   * Records the latency of a detection that ran at the current operating point.
+   *
+   * @return The new operating point if it changed, otherwise null.
+   */
+  public synchronized OperatingPoint onLatency(final long latencyMs) {
+    ++numSamples;
+    sampleSum += latencyMs;
+    if (numSamples < windowSize) {
+      return null;
+    }
+
+    final float frameMs = sampleSum / (float) numSamples / points.get(current).inferenceInterval;
+    numSamples = 0;
+    sampleSum = 0;
+    ++windowsSinceChange;
+
+    int next = current;
+    if (frameMs > targetFrameMs * (1 + downgradeMargin) && current < points.size() - 1) {
+      // Too slow here, so wait longer than last time before trying this point again.
+      holdoffs[current] = Math.min(holdoffs[current] * 2, MAX_HOLDOFF);
+      next = current + 1;
+    } else if (frameMs < targetFrameMs * (1 - upgradeMargin)
+        && current > 0
+        && windowsSinceChange >= holdoffs[current - 1]) {
+      next = current - 1;
+    } else if (windowsSinceChange >= 4 * holdoffs[current] && holdoffs[current] > MIN_HOLDOFF) {
+      // Comfortably stable, so start forgiving this point.
+      holdoffs[current] /= 2;
+    }
+    if (next == current) {
+      return null;
+    }
+
+    LOGGER.i(
+        "%.1fms per frame against a target of %.1fms, switching from %s to %s",
+        frameMs, targetFrameMs, points.get(current), points.get(next));
+    current = next;
+    windowsSinceChange = 0;
+    return points.get(current);
+  }
+}
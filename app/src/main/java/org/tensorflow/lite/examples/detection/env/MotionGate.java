@@ -0,0 +1,166 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Tells whether a camera frame differs enough from the last frame that was detected on to be worth
+ * detecting on again. Frames are compared by the mean absolute difference of a coarse grid of Y
+ * plane samples, which costs a small fraction of a conversion.
+ *
+ * <p>A static scene is still detected on again once the last detection gets too old, so that slow
+ * changes, and objects the detector missed the first time, are eventually picked up.
+ *
+ * <p>Only frames that are actually sent to detection, see {@link #onDetect}, become the reference
+ * later frames are compared with.
+ */
+public class MotionGate {
+  private final int width;
+  private final int height;
+  private final int step;
+  private final float threshold;
+  private final long maxReuseMs;
+  // Y samples of the last frame that was detected on.
+  private final byte[] reference;
+  private boolean hasReference = false;
+  private long referenceTimeMs;
+
+  private int skippedFrames = 0;
+  private long totalSkippedFrames = 0;
+  private long totalFrames = 0;
+  private long savedMs = 0;
+
+  /**
+   * @param width Width of the frames, in pixels.
+   * @param height Height of the frames, in pixels.
+   * @param step Distance between samples, in pixels, in both directions.
+   * @param threshold Mean absolute difference of the samples, in luminance levels, from which a
+   *     frame counts as changed.
+   * @param maxReuseMs Age of the last detection from which a frame is let through even if it has
+   *     not changed.
+   */
+  public MotionGate(
+      final int width,
+      final int height,
+      final int step,
+      final float threshold,
+      final long maxReuseMs) {
+    if (step < 1) {
+      throw new IllegalArgumentException("Step must be positive, got " + step);
+    }
+    this.width = width;
+    this.height = height;
+    this.step = step;
+    this.threshold = threshold;
+    this.maxReuseMs = maxReuseMs;
+    reference = new byte[((width + step - 1) / step) * ((height + step - 1) / step)];
+  }
+
+  /**
+   * Returns whether a frame should be detected on, because it changed or the last detection is too
+   * old. Otherwise the frame counts as skipped.
+   *
+   * @param luminance The frame's Y plane.
+   * @param rowStride Distance between rows of the Y plane, in bytes.
+   * @param nowMs Time of the frame, on the clock maxReuseMs is measured with.
+   * @param frameCostMs Roughly what detecting on the frame would cost, counted as saved if it is
+   *     skipped.
+   */
+  public boolean shouldDetect(
+      final ByteBuffer luminance, final int rowStride, final long nowMs, final long frameCostMs) {
+    ++totalFrames;
+    final boolean detect =
+        !hasReference
+            || nowMs - referenceTimeMs >= maxReuseMs
+            || meanDifference(luminance, rowStride) >= threshold;
+    if (!detect) {
+      ++skippedFrames;
+      ++totalSkippedFrames;
+      savedMs += frameCostMs;
+    }
+    return detect;
+  }
+
+  /**
+   * Makes a frame the one later frames are compared with, once it is sent to detection. Call while
+   * its Y plane is still valid.
+   */
+  public void onDetect(final ByteBuffer luminance, final int rowStride, final long nowMs) {
+    sample(luminance, rowStride);
+    hasReference = true;
+    referenceTimeMs = nowMs;
+    skippedFrames = 0;
+  }
+
+  /** Makes the next frame be detected on, e.g. after the detector changed. */
+  public void reset() {
+    hasReference = false;
+    skippedFrames = 0;
+  }
+
+  /** Returns how many frames were skipped since the last one that was detected on. */
+  public int getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  public long getTotalSkippedFrames() {
+    return totalSkippedFrames;
+  }
+
+  /** Returns how many frames were passed to shouldDetect(). */
+  public long getTotalFrames() {
+    return totalFrames;
+  }
+
+  /** Returns the estimated detection time the skipped frames saved. */
+  public long getSavedMs() {
+    return savedMs;
+  }
+
+  public String getStatString() {
+    return String.format(
+        Locale.US,
+        "%d of %d frames skipped, saving about %dms",
+        totalSkippedFrames,
+        totalFrames,
+        savedMs);
+  }
+
+  // Returns the mean absolute difference between the frame's samples and the reference.
+  private float meanDifference(final ByteBuffer luminance, final int rowStride) {
+    long sum = 0;
+    int i = 0;
+    for (int y = 0; y < height; y += step) {
+      final int row = y * rowStride;
+      for (int x = 0; x < width; x += step) {
+        sum += Math.abs((luminance.get(row + x) & 0xFF) - (reference[i++] & 0xFF));
+      }
+    }
+    return (float) sum / reference.length;
+  }
+
+  private void sample(final ByteBuffer luminance, final int rowStride) {
+    int i = 0;
+    for (int y = 0; y < height; y += step) {
+      final int row = y * rowStride;
+      for (int x = 0; x < width; x += step) {
+        reference[i++] = luminance.get(row + x);
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits YUV to ARGB conversion into horizontal bands that are converted concurrently. The calling
+ * thread converts the first band itself and the rest go to worker threads that are started up
+ * front and stay parked between frames, so no threads or tasks are created per frame. Every call
+ * returns only once all bands are done, and the output is identical to the serial conversion in
+ * {@link ImageUtils}.
+ */
+public class ParallelYuvConverter {
+  private static final Logger LOGGER = new Logger();
+
+  private static final int FORMAT_YUV420SP = 0;
+  private static final int FORMAT_YUV420 = 1;
+
+  private final int numBands;
+  private final boolean useLookupTable;
+  private final Thread[] workers;
+  private final Semaphore[] bandStarted;
+  private final Semaphore bandsDone = new Semaphore(0);
+  private volatile boolean closed = false;
+
+  // The frame being converted. Published to the workers through bandStarted and back through
+  // bandsDone, so no further synchronization is needed.
+  private int format;
+  private byte[] nv21Data;
+  private ByteBuffer yBuffer;
+  private ByteBuffer uBuffer;
+  private ByteBuffer vBuffer;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private int[] output;
+  // The first failure of a worker in the current frame, if any. Several workers may fail at once.
+  private final AtomicReference<RuntimeException> workerException =
+      new AtomicReference<RuntimeException>();
+
+  /**
+   * @param numBands Number of bands to split each frame into. One band converts serially on the
+   *     calling thread; each additional band gets its own worker thread.
+   * @param useLookupTable Whether to convert with {@link YuvLookupTable}.
+   */
+  public ParallelYuvConverter(final int numBands, final boolean useLookupTable) {
+    if (numBands < 1) {
+      throw new IllegalArgumentException("Need at least one band, got " + numBands);
+    }
+    this.numBands = numBands;
+    this.useLookupTable = useLookupTable;
+
+    workers = new Thread[numBands - 1];
+    bandStarted = new Semaphore[numBands - 1];
+    for (int i = 0; i < workers.length; ++i) {
+      final int band = i + 1;
+      final Semaphore started = new Semaphore(0);
+      bandStarted[i] = started;
+      workers[i] =
+          new Thread("yuv-convert-" + band) {
+            @Override
+            public void run() {
+              runWorker(band, started);
+            }
+          };
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    LOGGER.i("Started %d conversion workers", workers.length);
+  }
+
+  public int getNumBands() {
+    return numBands;
+  }
+
+  // Conversions are synchronized with close() so workers are only ever interrupted while idle.
+  public synchronized void convertYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final int[] output) {
+    this.format = FORMAT_YUV420SP;
+    this.nv21Data = input;
+    this.width = width;
+    this.height = height;
+    this.output = output;
+    convertBands();
+  }
+
+  /**
+   * Converts a YUV_420_888 frame. The plane buffers are read in place with absolute indices, see
+   * {@link ImageUtils#convertYUV420ToARGB8888(ByteBuffer, ByteBuffer, ByteBuffer, int, int, int,
+   * int, int[], boolean, int, int)}.
+   */
+  public synchronized void convertYUV420ToARGB8888(
+      final ByteBuffer yBuffer,
+      final ByteBuffer uBuffer,
+      final ByteBuffer vBuffer,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] output) {
+    this.format = FORMAT_YUV420;
+    this.yBuffer = yBuffer;
+    this.uBuffer = uBuffer;
+    this.vBuffer = vBuffer;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.output = output;
+    convertBands();
+  }
+
+  /** Stops the worker threads. The converter cannot be used afterwards. */
+  public synchronized void close() {
+    closed = true;
+    for (final Thread worker : workers) {
+      worker.interrupt();
+    }
+  }
+
+  private void convertBands() {
+    if (closed) {
+      throw new IllegalStateException("Converter has been closed");
+    }
+    workerException.set(null);
+    for (final Semaphore started : bandStarted) {
+      started.release();
+    }
+
+    RuntimeException exception = null;
+    try {
+      convertBand(0);
+    } catch (final RuntimeException e) {
+      exception = e;
+    }
+
+    // Always wait for the workers, so they never see the next frame's arguments mid-band.
+    bandsDone.acquireUninterruptibly(workers.length);
+    if (exception == null) {
+      exception = workerException.get();
+    }
+
+    nv21Data = null;
+    yBuffer = uBuffer = vBuffer = null;
+    output = null;
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  private void runWorker(final int band, final Semaphore started) {
+    while (!closed) {
+      try {
+        started.acquire();
+      } catch (final InterruptedException e) {
+        continue;
+      }
+      try {
+        convertBand(band);
+      } catch (final RuntimeException e) {
+        LOGGER.e(e, "Conversion of band %d failed", band);
+        workerException.compareAndSet(null, e);
+      } finally {
+        bandsDone.release();
+      }
+    }
+  }
+
+  private void convertBand(final int band) {
+    // Band edges fall on even rows so each chroma row is read by a single band.
+    final int startRow = band == 0 ? 0 : (height * band / numBands) & ~1;
+    final int endRow = band == numBands - 1 ? height : (height * (band + 1) / numBands) & ~1;
+    if (startRow >= endRow) {
+      return;
+    }
+
+    if (format == FORMAT_YUV420SP) {
+      ImageUtils.convertYUV420SPToARGB8888(
+          nv21Data, width, height, output, useLookupTable, startRow, endRow);
+    } else {
+      ImageUtils.convertYUV420ToARGB8888(
+          yBuffer,
+          uBuffer,
+          vBuffer,
+          width,
+          yRowStride,
+          uvRowStride,
+          uvPixelStride,
+          output,
+          useLookupTable,
+          startRow,
+          endRow);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64-bit perceptual hashes of camera frames, which stay close in Hamming distance for similar
+ * views, e.g. the same place seen again with slightly different exposure or framing.
+ */
+public final class PerceptualHash {
+  // The frame is reduced to GRID_WIDTH x GRID_HEIGHT cells, each the mean of SAMPLES x SAMPLES
+  // luminance samples.
+  private static final int GRID_WIDTH = 9;
+  private static final int GRID_HEIGHT = 8;
+  private static final int SAMPLES = 4;
+
+  private PerceptualHash() {}
+
+  /**
+   * Returns the difference hash of a frame's Y plane: one bit per pair of horizontally adjacent
+   * cells of an 8x9 grid, set if the right cell is brighter. Only about a thousand pixels are read.
+   */
+  public static long dHash(
+      final ByteBuffer luminance, final int width, final int height, final int rowStride) {
+    long hash = 0;
+    for (int row = 0; row < GRID_HEIGHT; ++row) {
+      final int top = row * height / GRID_HEIGHT;
+      final int bottom = (row + 1) * height / GRID_HEIGHT;
+      int previous = cellSum(luminance, rowStride, 0, width / GRID_WIDTH, top, bottom);
+      for (int column = 1; column < GRID_WIDTH; ++column) {
+        final int left = column * width / GRID_WIDTH;
+        final int right = (column + 1) * width / GRID_WIDTH;
+        final int current = cellSum(luminance, rowStride, left, right, top, bottom);
+        hash = (hash << 1) | (current > previous ? 1 : 0);
+        previous = current;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Returns a hash combined with the rectangle of the frame it was taken for, e.g. the region a
+   * detector sees. Hashes of the same rectangle stay as close as they were, while those of
+   * different rectangles end up about 32 bits apart.
+   */
+  public static long withRegion(
+      final long hash, final int left, final int top, final int width, final int height) {
+    long key = left;
+    key = key * 31 + top;
+    key = key * 31 + width;
+    key = key * 31 + height;
+    // Finalizer of SplitMix64, so that nearby rectangles get unrelated bits.
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ key ^ (key >>> 31);
+  }
+
+  public static int distance(final long a, final long b) {
+    return Long.bitCount(a ^ b);
+  }
+
+  // Sums the samples of a cell. Every cell has the same number of samples, so sums compare as
+  // means do.
+  private static int cellSum(
+      final ByteBuffer luminance,
+      final int rowStride,
+      final int left,
+      final int right,
+      final int top,
+      final int bottom) {
+    int sum = 0;
+    for (int i = 0; i < SAMPLES; ++i) {
+      final int y = top + (2 * i + 1) * (bottom - top) / (2 * SAMPLES);
+      for (int j = 0; j < SAMPLES; ++j) {
+        final int x = left + (2 * j + 1) * (right - left) / (2 * SAMPLES);
+        sum += luminance.get(y * rowStride + x) & 0xFF;
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,60 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.speech.tts.TextToSpeech;
+import java.util.Locale;
+
+/**
+ * The app's single text to speech engine. Binding to the engine is slow, so it is done once per
+ * process and shared by everything that speaks, instead of once per screen.
+ */
+public final class SharedTextToSpeech {
+  private static final Logger LOGGER = new Logger();
+
+  // Guarded by SharedTextToSpeech.class.
+  private static TextToSpeech textToSpeech;
+
+  private SharedTextToSpeech() {}
+
+  /**
+   * Returns the engine, creating it on first use. It speaks English once it has initialized, and
+   * drops anything it is asked to say before that.
+   */
+  public static synchronized TextToSpeech get(final Context context) {
+    if (textToSpeech == null) {
+      final long startTime = SystemClock.uptimeMillis();
+      textToSpeech =
+          new TextToSpeech(
+              context.getApplicationContext(),
+              status -> {
+                if (status != TextToSpeech.ERROR) {
+                  // Called on the main thread once the engine is bound, after it was published.
+                  synchronized (SharedTextToSpeech.class) {
+                    textToSpeech.setLanguage(Locale.ENGLISH);
+                  }
+                }
+                LOGGER.i(
+                    "Text to speech initialized in %dms with status %d",
+                    SystemClock.uptimeMillis() - startTime,
+                    status);
+              });
+    }
+    return textToSpeech;
+  }
+}
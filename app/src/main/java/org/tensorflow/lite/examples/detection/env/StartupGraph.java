@@ -0,0 +1,202 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.os.SystemClock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs initialization tasks as soon as the tasks they depend on are done, so independent ones run
+ * concurrently, and logs how long each one took.
+ *
+ * <p>Tasks run on the graph's executor unless they were added with their own, e.g. one that posts
+ * to the UI thread for tasks that touch views. Once started, a graph can't be changed.
+ *
+ * <p>If a task fails, the tasks that depend on it, directly or not, are cancelled, and the first
+ * failure is reported to the listener. Tasks already running are left to finish.
+ */
+public class StartupGraph {
+  private static final Logger LOGGER = new Logger();
+
+  /** One step of the startup. */
+  public interface Task {
+    void run() throws Exception;
+  }
+
+  /** Called once, on the thread of the last task to finish or the task that failed. */
+  public interface Listener {
+    void onComplete(long elapsedMs);
+
+    /**
+     * @param taskName The task that failed, or could not be scheduled.
+     * @param error What it threw, which may be an Error, e.g. from loading a native library.
+     */
+    void onFailure(String taskName, Throwable error);
+  }
+
+  private static class Node {
+    final String name;
+    final Task task;
+    final Executor executor;
+    final List<Node> dependents = new ArrayList<Node>();
+    final AtomicInteger pendingDependencies = new AtomicInteger();
+
+    Node(final String name, final Task task, final Executor executor) {
+      this.name = name;
+      this.task = task;
+      this.executor = executor;
+    }
+  }
+
+  private final Executor executor;
+  private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+  private final AtomicInteger pendingTasks = new AtomicInteger();
+  private final AtomicBoolean failed = new AtomicBoolean();
+  private Listener listener;
+  private long startTimeMs;
+
+  /** @param executor Runs the tasks that weren't given an executor of their own. */
+  public StartupGraph(final Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Adds a task that runs on the graph's executor once the named tasks are done.
+   *
+   * @param dependencies Names of tasks that were added before.
+   */
+  public StartupGraph add(final String name, final Task task, final String... dependencies) {
+    return add(name, executor, task, dependencies);
+  }
+
+  /** Adds a task that runs on the given executor once the named tasks are done. */
+  public StartupGraph add(
+      final String name,
+      final Executor taskExecutor,
+      final Task task,
+      final String... dependencies) {
+    if (listener != null) {
+      throw new IllegalStateException("Graph has already been started");
+    }
+    if (nodes.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate task " + name);
+    }
+    final Node node = new Node(name, task, taskExecutor);
+    for (final String dependency : dependencies) {
+      final Node parent = nodes.get(dependency);
+      if (parent == null) {
+        throw new IllegalArgumentException(name + " depends on unknown task " + dependency);
+      }
+      parent.dependents.add(node);
+      node.pendingDependencies.incrementAndGet();
+    }
+    nodes.put(name, node);
+    return this;
+  }
+
+  /** Starts every task without dependencies. */
+  public void start(final Listener listener) {
+    if (this.listener != null) {
+      throw new IllegalStateException("Graph has already been started");
+    }
+    this.listener = listener;
+    startTimeMs = SystemClock.uptimeMillis();
+    pendingTasks.set(nodes.size());
+    if (nodes.isEmpty()) {
+      listener.onComplete(0);
+      return;
+    }
+    // Collected first, as the tasks may finish and schedule others while this loops.
+    final List<Node> roots = new ArrayList<Node>();
+    for (final Node node : nodes.values()) {
+      if (node.pendingDependencies.get() == 0) {
+        roots.add(node);
+      }
+    }
+    for (final Node node : roots) {
+      schedule(node);
+    }
+  }
+
+  private void schedule(final Node node) {
+    try {
+      node.executor.execute(() -> run(node));
+    } catch (final RejectedExecutionException e) {
+      fail(node, e);
+    }
+  }
+
+  private void run(final Node node) {
+    if (failed.get()) {
+      return;
+    }
+    final long taskStartMs = SystemClock.uptimeMillis();
+    try {
+      node.task.run();
+    } catch (final Throwable t) {
+      // Errors too, or the tasks after this one would wait forever without a word.
+      fail(node, t);
+      return;
+    }
+    final long nowMs = SystemClock.uptimeMillis();
+    LOGGER.i(
+        "Startup task %s took %dms, done at %dms on %s",
+        node.name,
+        nowMs - taskStartMs,
+        nowMs - startTimeMs,
+        Thread.currentThread().getName());
+
+    for (final Node dependent : node.dependents) {
+      if (dependent.pendingDependencies.decrementAndGet() == 0) {
+        schedule(dependent);
+      }
+    }
+    if (pendingTasks.decrementAndGet() == 0 && !failed.get()) {
+      listener.onComplete(nowMs - startTimeMs);
+    }
+  }
+
+  private void fail(final Node node, final Throwable error) {
+    LOGGER.e(error, "Startup task %s failed", node.name);
+    if (!failed.compareAndSet(false, true)) {
+      return;
+    }
+    // Dependents of the failed task, directly or not, are never scheduled.
+    final Set<String> cancelled = new LinkedHashSet<String>();
+    final Queue<Node> queue = new ArrayDeque<Node>(node.dependents);
+    while (!queue.isEmpty()) {
+      final Node dependent = queue.remove();
+      if (cancelled.add(dependent.name)) {
+        queue.addAll(dependent.dependents);
+      }
+    }
+    if (!cancelled.isEmpty()) {
+      LOGGER.w("Cancelled startup tasks %s after %s failed", cancelled, node.name);
+    }
+    listener.onFailure(node.name, error);
+  }
+}
@@ -0,0 +1,193 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table driven YUV to ARGB conversion. Produces exactly the same pixels as the arithmetic
+ * conversion in {@link ImageUtils}, but replaces the per-pixel multiplies and range checks with
+ * array lookups.
+ */
+public final class YuvLookupTable {
+  // Fixed point contribution of each input byte to the R, G and B sums, using the same
+  // coefficients as ImageUtils.YUV2RGB.
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] R_V_TABLE = new int[256];
+  private static final int[] G_U_TABLE = new int[256];
+  private static final int[] G_V_TABLE = new int[256];
+  private static final int[] B_U_TABLE = new int[256];
+
+  // Saturates a sum that has been shifted down by 10 bits to [0, 255]. Clamping to
+  // [0, kMaxChannelValue] and then shifting gives the same result as shifting and then clamping,
+  // so the table can be indexed directly by the shifted sum. Sums range over [-264448, 547270],
+  // i.e. [-259, 534] after the shift.
+  private static final int CLAMP_OFFSET = 384;
+  private static final int[] CLAMP_TABLE = new int[1024];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      final int y = (i - 16) < 0 ? 0 : (i - 16);
+      final int c = i - 128;
+      Y_TABLE[i] = 1192 * y;
+      R_V_TABLE[i] = 1634 * c;
+      G_U_TABLE[i] = -400 * c;
+      G_V_TABLE[i] = -833 * c;
+      B_U_TABLE[i] = 2066 * c;
+    }
+    for (int i = 0; i < CLAMP_TABLE.length; ++i) {
+      final int value = i - CLAMP_OFFSET;
+      CLAMP_TABLE[i] = value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+  }
+
+  private YuvLookupTable() {}
+
+  /**
+   * Converts a single YUV sample to an opaque ARGB pixel.
+   *
+   * @param y Luminance in [0, 255].
+   * @param u Blue-difference chroma in [0, 255].
+   * @param v Red-difference chroma in [0, 255].
+   */
+  public static int yuvToArgb(final int y, final int u, final int v) {
+    final int y1192 = Y_TABLE[y];
+    final int r = CLAMP_TABLE[((y1192 + R_V_TABLE[v]) >> 10) + CLAMP_OFFSET];
+    final int g = CLAMP_TABLE[((y1192 + G_V_TABLE[v] + G_U_TABLE[u]) >> 10) + CLAMP_OFFSET];
+    final int b = CLAMP_TABLE[((y1192 + B_U_TABLE[u]) >> 10) + CLAMP_OFFSET];
+    return 0xff000000 | (r << 16) | (g << 8) | b;
+  }
+
+  // Combines a looked up luminance term with chroma terms that are shared by a pair of pixels.
+  private static int toArgb(final int y1192, final int rv, final int guv, final int bu) {
+    return 0xff000000
+        | (CLAMP_TABLE[((y1192 + rv) >> 10) + CLAMP_OFFSET] << 16)
+        | (CLAMP_TABLE[((y1192 + guv) >> 10) + CLAMP_OFFSET] << 8)
+        | CLAMP_TABLE[((y1192 + bu) >> 10) + CLAMP_OFFSET];
+  }
+
+  /**
+   * Converts rows [startRow, endRow) of an NV21 frame: a full resolution Y plane followed by
+   * interleaved V/U samples, each shared by a 2x2 block of pixels. Each chroma sample is read and
+   * looked up once for the pair of pixels it covers in a row.
+   */
+  static void convertNV21Rows(
+      final byte[] input,
+      final int width,
+      final int height,
+      final int[] output,
+      final int startRow,
+      final int endRow) {
+    final int frameSize = width * height;
+    for (int j = startRow; j < endRow; j++) {
+      final int uvRow = frameSize + (j >> 1) * width;
+      int yp = j * width;
+      int i = 0;
+      for (; i + 1 < width; i += 2) {
+        final int v = 0xff & input[uvRow + i];
+        final int u = 0xff & input[uvRow + i + 1];
+        final int rv = R_V_TABLE[v];
+        final int guv = G_U_TABLE[u] + G_V_TABLE[v];
+        final int bu = B_U_TABLE[u];
+        output[yp] = toArgb(Y_TABLE[0xff & input[yp]], rv, guv, bu);
+        output[yp + 1] = toArgb(Y_TABLE[0xff & input[yp + 1]], rv, guv, bu);
+        yp += 2;
+      }
+      if (i < width) {
+        output[yp] =
+            yuvToArgb(0xff & input[yp], 0xff & input[uvRow + i + 1], 0xff & input[uvRow + i]);
+      }
+    }
+  }
+
+  /**
+   * Converts rows [startRow, endRow) of a semi-planar YUV_420_888 frame, i.e. one whose U and V
+   * planes have a pixel stride of 2 (interleaved NV12 or NV21 memory, as most Camera2 HALs
+   * produce).
+   */
+  static void convertSemiPlanarRows(
+      final ByteBuffer yBuffer,
+      final ByteBuffer uBuffer,
+      final ByteBuffer vBuffer,
+      final int width,
+      final int yRowStride,
+      final int uvRowStride,
+      final int[] output,
+      final int startRow,
+      final int endRow) {
+    for (int j = startRow; j < endRow; j++) {
+      final int yRow = yRowStride * j;
+      final int uvRow = uvRowStride * (j >> 1);
+      int yp = j * width;
+      int i = 0;
+      for (; i + 1 < width; i += 2) {
+        // With a pixel stride of 2, the chroma sample for pixels i and i + 1 is at offset i.
+        final int u = 0xff & uBuffer.get(uvRow + i);
+        final int v = 0xff & vBuffer.get(uvRow + i);
+        final int rv = R_V_TABLE[v];
+        final int guv = G_U_TABLE[u] + G_V_TABLE[v];
+        final int bu = B_U_TABLE[u];
+        output[yp++] = toArgb(Y_TABLE[0xff & yBuffer.get(yRow + i)], rv, guv, bu);
+        output[yp++] = toArgb(Y_TABLE[0xff & yBuffer.get(yRow + i + 1)], rv, guv, bu);
+      }
+      if (i < width) {
+        output[yp] =
+            yuvToArgb(
+                0xff & yBuffer.get(yRow + i),
+                0xff & uBuffer.get(uvRow + i),
+                0xff & vBuffer.get(uvRow + i));
+      }
+    }
+  }
+
+  /**
+   * Converts rows [startRow, endRow) of a fully planar (I420) YUV_420_888 frame, i.e. one whose U
+   * and V planes have a pixel stride of 1.
+   */
+  static void convertPlanarRows(
+      final ByteBuffer yBuffer,
+      final ByteBuffer uBuffer,
+      final ByteBuffer vBuffer,
+      final int width,
+      final int yRowStride,
+      final int uvRowStride,
+      final int[] output,
+      final int startRow,
+      final int endRow) {
+    for (int j = startRow; j < endRow; j++) {
+      final int yRow = yRowStride * j;
+      int uvIndex = uvRowStride * (j >> 1);
+      int yp = j * width;
+      int i = 0;
+      for (; i + 1 < width; i += 2, uvIndex++) {
+        final int u = 0xff & uBuffer.get(uvIndex);
+        final int v = 0xff & vBuffer.get(uvIndex);
+        final int rv = R_V_TABLE[v];
+        final int guv = G_U_TABLE[u] + G_V_TABLE[v];
+        final int bu = B_U_TABLE[u];
+        output[yp++] = toArgb(Y_TABLE[0xff & yBuffer.get(yRow + i)], rv, guv, bu);
+        output[yp++] = toArgb(Y_TABLE[0xff & yBuffer.get(yRow + i + 1)], rv, guv, bu);
+      }
+      if (i < width) {
+        output[yp] =
+            yuvToArgb(
+                0xff & yBuffer.get(yRow + i),
+                0xff & uBuffer.get(uvIndex),
+                0xff & vBuffer.get(uvIndex));
+      }
+    }
+  }
+}
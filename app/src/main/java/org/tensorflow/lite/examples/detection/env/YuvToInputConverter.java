@@ -0,0 +1,270 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a YUV_420 frame straight into the quantized RGB input of a detection model, scaling and
+ * rotating in the same pass. This replaces the ARGB conversion, the frame and crop bitmaps and the
+ * per-pixel packing in the classifier with a single read of the camera planes.
+ *
+ * <p>Each output pixel is sampled (nearest neighbour) at the point that the inverse of {@link
+ * ImageUtils#getTransformationMatrix} maps its center to, so detections in the output space map
+ * back to the frame through the same crop-to-frame transform as before.
+ */
+public class YuvToInputConverter {
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int inputSize;
+  private final int applyRotation;
+  private final boolean maintainAspectRatio;
+  private final boolean transpose;
+
+  // The part of the frame that is scaled to the input; the whole frame unless set otherwise.
+  private int regionLeft;
+  private int regionTop;
+  private int regionWidth;
+  private int regionHeight;
+
+  // Source column/row selected by each output column (or row, when transposed), and the row/column
+  // selected by each output row (or column).
+  private final int[] innerSource;
+  private final int[] outerSource;
+
+  // Plane offsets derived from the above for the strides last seen. Rebuilt if the strides or the
+  // region change.
+  private final int[] innerYOffsets;
+  private final int[] innerUvOffsets;
+  private final int[] outerYOffsets;
+  private final int[] outerUvOffsets;
+  private int yRowStride = -1;
+  private int uvRowStride = -1;
+  private int uvPixelStride = -1;
+
+  private final byte[] rgbValues;
+
+  /**
+   * @param frameWidth Width of the camera frame.
+   * @param frameHeight Height of the camera frame.
+   * @param inputSize Width and height of the square model input.
+   * @param rotation Rotation to apply to the frame. Must be a multiple of 90.
+   * @param maintainAspectRatio Same meaning as for {@link ImageUtils#getTransformationMatrix}.
+   */
+  public YuvToInputConverter(
+      final int frameWidth,
+      final int frameHeight,
+      final int inputSize,
+      final int rotation,
+      final boolean maintainAspectRatio) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation of " + rotation + " is not a multiple of 90");
+    }
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.inputSize = inputSize;
+    this.maintainAspectRatio = maintainAspectRatio;
+    applyRotation = ((rotation % 360) + 360) % 360;
+    transpose = applyRotation % 180 != 0;
+
+    innerSource = new int[inputSize];
+    outerSource = new int[inputSize];
+    innerYOffsets = new int[inputSize];
+    innerUvOffsets = new int[inputSize];
+    outerYOffsets = new int[inputSize];
+    outerUvOffsets = new int[inputSize];
+    rgbValues = new byte[inputSize * inputSize * 3];
+
+    setRegion(0, 0, frameWidth, frameHeight);
+  }
+
+  /**
+   * Restricts conversion to a rectangle of the frame, which is then scaled and rotated to fill the
+   * whole input as the full frame otherwise would. The matching transforms are those of {@link
+   * ImageUtils#getTransformationMatrix} for a regionWidth x regionHeight source, offset by the
+   * region's top left corner.
+   */
+  public void setRegion(
+      final int left,
+      final int top,
+      final int regionWidth,
+      final int regionHeight) {
+    if (left < 0
+        || top < 0
+        || regionWidth <= 0
+        || regionHeight <= 0
+        || left + regionWidth > frameWidth
+        || top + regionHeight > frameHeight) {
+      throw new IllegalArgumentException(
+          "Region " + regionWidth + "x" + regionHeight + "+" + left + "+" + top
+              + " is outside the " + frameWidth + "x" + frameHeight + " frame");
+    }
+    if (left == regionLeft
+        && top == regionTop
+        && regionWidth == this.regionWidth
+        && regionHeight == this.regionHeight) {
+      return;
+    }
+    regionLeft = left;
+    regionTop = top;
+    this.regionWidth = regionWidth;
+    this.regionHeight = regionHeight;
+
+    final int inWidth = transpose ? regionHeight : regionWidth;
+    final int inHeight = transpose ? regionWidth : regionHeight;
+    float scaleX = inputSize / (float) inWidth;
+    float scaleY = inputSize / (float) inHeight;
+    if (maintainAspectRatio) {
+      scaleX = scaleY = Math.max(scaleX, scaleY);
+    }
+
+    // Unrotated, output columns pick source columns and output rows pick source rows. Rotated by
+    // 90 or 270, output rows pick source columns and output columns pick source rows.
+    final int[] fromColumn = innerSource;
+    final int[] fromRow = outerSource;
+    for (int i = 0; i < inputSize; ++i) {
+      final float center = i + 0.5f;
+      if (applyRotation == 0) {
+        // Without rotation the transform is a plain scale about the origin.
+        fromColumn[i] = left + clamp((int) Math.floor(center / scaleX), regionWidth);
+        fromRow[i] = top + clamp((int) Math.floor(center / scaleY), regionHeight);
+        continue;
+      }
+      // Otherwise the region is rotated about its center, scaled and re-centered on the output.
+      final float qx = (center - inputSize / 2.0f) / scaleX;
+      final float qy = (center - inputSize / 2.0f) / scaleY;
+      switch (applyRotation) {
+        case 90:
+          fromRow[i] = left + clamp((int) Math.floor(qy + regionWidth / 2.0f), regionWidth);
+          fromColumn[i] = top + clamp((int) Math.floor(-qx + regionHeight / 2.0f), regionHeight);
+          break;
+        case 180:
+          fromColumn[i] = left + clamp((int) Math.floor(-qx + regionWidth / 2.0f), regionWidth);
+          fromRow[i] = top + clamp((int) Math.floor(-qy + regionHeight / 2.0f), regionHeight);
+          break;
+        default: // 270
+          fromRow[i] = left + clamp((int) Math.floor(-qy + regionWidth / 2.0f), regionWidth);
+          fromColumn[i] = top + clamp((int) Math.floor(qx + regionHeight / 2.0f), regionHeight);
+          break;
+      }
+    }
+
+    // Force the plane offsets to be rebuilt on the next conversion.
+    yRowStride = -1;
+  }
+
+  private static int clamp(final int value, final int size) {
+    return value < 0 ? 0 : (value >= size ? size - 1 : value);
+  }
+
+  public int getFrameWidth() {
+    return frameWidth;
+  }
+
+  public int getFrameHeight() {
+    return frameHeight;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public int getRegionLeft() {
+    return regionLeft;
+  }
+
+  public int getRegionTop() {
+    return regionTop;
+  }
+
+  public int getRegionWidth() {
+    return regionWidth;
+  }
+
+  public int getRegionHeight() {
+    return regionHeight;
+  }
+
+  private void updateOffsets(
+      final int yRowStride, final int uvRowStride, final int uvPixelStride) {
+    if (yRowStride == this.yRowStride
+        && uvRowStride == this.uvRowStride
+        && uvPixelStride == this.uvPixelStride) {
+      return;
+    }
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+
+    for (int i = 0; i < inputSize; ++i) {
+      final int inner = innerSource[i];
+      final int outer = outerSource[i];
+      if (transpose) {
+        // Inner values are source rows, outer values are source columns.
+        innerYOffsets[i] = inner * yRowStride;
+        innerUvOffsets[i] = (inner >> 1) * uvRowStride;
+        outerYOffsets[i] = outer;
+        outerUvOffsets[i] = (outer >> 1) * uvPixelStride;
+      } else {
+        innerYOffsets[i] = inner;
+        innerUvOffsets[i] = (inner >> 1) * uvPixelStride;
+        outerYOffsets[i] = outer * yRowStride;
+        outerUvOffsets[i] = (outer >> 1) * uvRowStride;
+      }
+    }
+  }
+
+  /**
+   * Writes the model input for one frame. Indices into the plane buffers are absolute, so their
+   * positions are ignored.
+   *
+   * @param yBuffer Luminance plane.
+   * @param uBuffer U plane, starting at the first U sample.
+   * @param vBuffer V plane, starting at the first V sample.
+   * @param output Destination for inputSize * inputSize interleaved RGB bytes.
+   */
+  public void convert(
+      final ByteBuffer yBuffer,
+      final ByteBuffer uBuffer,
+      final ByteBuffer vBuffer,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final ByteBuffer output) {
+    updateOffsets(yRowStride, uvRowStride, uvPixelStride);
+
+    final byte[] rgb = rgbValues;
+    int p = 0;
+    for (int j = 0; j < inputSize; ++j) {
+      final int yRow = outerYOffsets[j];
+      final int uvRow = outerUvOffsets[j];
+      for (int i = 0; i < inputSize; ++i) {
+        final int uvIndex = uvRow + innerUvOffsets[i];
+        final int pixel =
+            YuvLookupTable.yuvToArgb(
+                0xff & yBuffer.get(yRow + innerYOffsets[i]),
+                0xff & uBuffer.get(uvIndex),
+                0xff & vBuffer.get(uvIndex));
+        rgb[p++] = (byte) (pixel >> 16);
+        rgb[p++] = (byte) (pixel >> 8);
+        rgb[p++] = (byte) pixel;
+      }
+    }
+
+    output.rewind();
+    output.put(rgb);
+  }
+}
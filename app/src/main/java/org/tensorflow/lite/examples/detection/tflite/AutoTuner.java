@@ -0,0 +1,204 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Build;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.BuildConfig;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Finds the fastest thread count and delegate for a model on this device, and remembers the result
+ * per device build, app version and model, so tuning only happens the first time a model is used
+ * on a device, or after a system or app update.
+ *
+ * <p>Tuning runs on the detections the app makes anyway, see {@link Session}, so that it never
+ * holds detection up: each candidate configuration is used for a few frames in turn.
+ */
+public class AutoTuner {
+  private static final Logger LOGGER = new Logger();
+
+  // Detections per candidate configuration, the first of which are not timed.
+  private static final int WARMUP_RUNS = 2;
+  private static final int TIMED_RUNS = 5;
+  private static final String KEY_THREADS = ".threads";
+  private static final String KEY_NNAPI = ".nnapi";
+
+  /** Settings to run a model with. */
+  public static class Configuration {
+    public final int numThreads;
+    public final boolean useNNAPI;
+
+    public Configuration(final int numThreads, final boolean useNNAPI) {
+      this.numThreads = numThreads;
+      this.useNNAPI = useNNAPI;
+    }
+
+    public void applyTo(final Classifier classifier) {
+      classifier.setNumThreads(numThreads);
+      classifier.setUseNNAPI(useNNAPI);
+    }
+
+    @Override
+    public String toString() {
+      return numThreads + " threads" + (useNNAPI ? ", NNAPI" : "");
+    }
+  }
+
+  /**
+   * Tunes a model on real detections. Every detection is run with {@link #getConfiguration()} and
+   * its latency passed to {@link #onLatency(long)}, until the session is done. Not thread safe.
+   */
+  public class Session {
+    private final String key;
+    private final List<Configuration> candidates = getCandidates();
+    private final long[] times = new long[TIMED_RUNS];
+    private int candidate = 0;
+    private int runs = 0;
+    private Configuration best;
+    private float bestMs = Float.MAX_VALUE;
+
+    private Session(final String key) {
+      this.key = key;
+    }
+
+    /** Returns the configuration to run detection with, the best one once done. */
+    public Configuration getConfiguration() {
+      return isDone() ? best : candidates.get(candidate);
+    }
+
+    /** Returns whether every candidate has been tried, after which the result is stored. */
+    public boolean isDone() {
+      return candidate >= candidates.size();
+    }
+
+    /**
+     * Records the latency of a detection that ran with the current configuration.
+     *
+     * @return The configuration to run with from now on if it changed, otherwise null.
+     */
+    public Configuration onLatency(final long latencyMs) {
+      if (isDone()) {
+        return null;
+      }
+      if (runs >= WARMUP_RUNS) {
+        times[runs - WARMUP_RUNS] = latencyMs;
+      }
+      if (++runs < WARMUP_RUNS + TIMED_RUNS) {
+        return null;
+      }
+      Arrays.sort(times);
+      final float ms = times[TIMED_RUNS / 2];
+      LOGGER.i("%s: %.1fms", candidates.get(candidate), ms);
+      if (ms < bestMs) {
+        best = candidates.get(candidate);
+        bestMs = ms;
+      }
+      return next();
+    }
+
+    /** Skips the current configuration, e.g. because the model cannot run with it. */
+    public Configuration skip() {
+      if (isDone()) {
+        throw new IllegalStateException("Cannot run with the tuned configuration");
+      }
+      LOGGER.w("Cannot run with %s", candidates.get(candidate));
+      return next();
+    }
+
+    // Moves on to the next candidate, storing the best one after the last.
+    private Configuration next() {
+      ++candidate;
+      runs = 0;
+      if (!isDone()) {
+        return candidates.get(candidate);
+      }
+      if (best == null) {
+        throw new IllegalStateException("No configuration could run the model");
+      }
+      preferences
+          .edit()
+          .putInt(key + KEY_THREADS, best.numThreads)
+          .putBoolean(key + KEY_NNAPI, best.useNNAPI)
+          .apply();
+      LOGGER.i("Tuned to %s (%.1fms) for %s", best, bestMs, key);
+      return best;
+    }
+  }
+
+  private final SharedPreferences preferences;
+
+  public AutoTuner(final SharedPreferences preferences) {
+    this.preferences = preferences;
+  }
+
+  /**
+   * Returns the key results for a model are stored under, made of the device's build fingerprint,
+   * the app's version, which the bundled models change with, and the model's name and size. Only
+   * reads the model's size, so it is cheap enough for the startup path.
+   */
+  public static String getKey(final AssetManager assetManager, final ModelSpec spec)
+      throws IOException {
+    final AssetFileDescriptor descriptor = assetManager.openFd(spec.getModelFilename());
+    final long size;
+    try {
+      size = descriptor.getDeclaredLength();
+    } finally {
+      descriptor.close();
+    }
+    return String.format(
+        Locale.US,
+        "%s/%d/%s/%d",
+        Build.FINGERPRINT,
+        BuildConfig.VERSION_CODE,
+        spec.getName(),
+        size);
+  }
+
+  /** Returns the stored result for a key, or null if the model has not been tuned yet. */
+  public Configuration getStored(final String key) {
+    if (!preferences.contains(key + KEY_THREADS)) {
+      return null;
+    }
+    return new Configuration(
+        preferences.getInt(key + KEY_THREADS, 1), preferences.getBoolean(key + KEY_NNAPI, false));
+  }
+
+  /** Starts tuning the model results are stored under key for. */
+  public Session startSession(final String key) {
+    return new Session(key);
+  }
+
+  // One, two, four, ... threads up to the number of cores, with and without NNAPI.
+  private static List<Configuration> getCandidates() {
+    final int numCores = Runtime.getRuntime().availableProcessors();
+    final List<Configuration> candidates = new ArrayList<Configuration>();
+    for (final boolean useNNAPI : new boolean[] {false, true}) {
+      for (int numThreads = 1; numThreads < numCores; numThreads *= 2) {
+        candidates.add(new Configuration(numThreads, useNNAPI));
+      }
+      candidates.add(new Configuration(numCores, useNNAPI));
+    }
+    return candidates;
+  }
+}
@@ -17,12 +17,44 @@ package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
+  /**
+   * Runs recognition on a bitmap of the model's input size. The results are new objects owned by
+   * the caller; {@link #detect(Bitmap, DetectionBatch)} runs without allocating them.
+   */
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Runs recognition on input that has already been laid out in the model's input tensor format,
+   * e.g. by {@link org.tensorflow.lite.examples.detection.env.YuvToInputConverter}.
+   */
+  List<Recognition> recognizeImage(ByteBuffer inputData);
+
+  /**
+   * Runs recognition on several images, e.g. saved captures, returning the results of each in the
+   * same order.
+   */
+  List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
+  /**
+   * Runs detection and replaces the contents of results with the detections, in input
+   * coordinates. Unlike recognizeImage, this creates no objects per detection.
+   */
+  void detect(Bitmap bitmap, DetectionBatch results);
+
+  /** As {@link #detect(Bitmap, DetectionBatch)}, on input in the model's input tensor format. */
+  void detect(ByteBuffer inputData, DetectionBatch results);
+
+  /**
+   * Restricts the results of the following calls to the detections that query accepts. The query
+   * is copied, so the caller may keep changing it, e.g. once per frame.
+   */
+  void setQuery(DetectionQuery query);
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -0,0 +1,493 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * A Classifier backed by several independent instances, e.g. one interpreter each, for throughput
+ * oriented offline work. Each instance has its own buffers and worker thread, and requests go to
+ * whichever instance is free. Results are delivered in submission order.
+ *
+ * <p>Each instance is given its own number of threads, so the stat string can be used to compare
+ * splits of the cores, e.g. two instances with two threads against one with four, or against one
+ * with three and one with one.
+ */
+public class ClassifierPool implements Classifier {
+  private static final Logger LOGGER = new Logger();
+
+  /** Creates one of the pooled instances. */
+  public interface Factory {
+    Classifier create() throws IOException;
+  }
+
+  /** Receives the results of a submitted request. */
+  public interface Callback {
+    /**
+     * Called on one of the pool's threads, in submission order. The input of the request, and the
+     * detections it was run into if any, are only valid until this returns.
+     *
+     * @param sequence The value returned by the submit call.
+     */
+    void onResults(long sequence, List<Recognition> results);
+
+    /**
+     * Called instead of onResults(), in the same order, if running the request threw, e.g. an
+     * OutOfMemoryError from the interpreter. Delivers empty results unless overridden.
+     */
+    default void onFailure(final long sequence, final Throwable error) {
+      onResults(sequence, new ArrayList<Recognition>());
+    }
+  }
+
+  private final Worker[] workers;
+  private final LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+  private final long startTimeMs = SystemClock.uptimeMillis();
+
+  // Guarded by this.
+  private long nextSequence = 0;
+  private long nextToDeliver = 0;
+  private boolean closed = false;
+  private int liveWorkers;
+
+  /**
+   * @param factory Creates the instances, each of which is used from a single thread only.
+   * @param numInstances Number of instances, and worker threads, in the pool.
+   * @param numThreadsPerInstance Number of threads each instance runs inference with.
+   */
+  public ClassifierPool(
+      final Factory factory,
+      final int numInstances,
+      final int numThreadsPerInstance)
+      throws IOException {
+    this(factory, fill(numInstances, numThreadsPerInstance));
+  }
+
+  /**
+   * @param factory Creates the instances, each of which is used from a single thread only.
+   * @param numThreadsPerInstance Number of threads each instance runs inference with, one entry
+   *     per instance, and worker thread, in the pool.
+   */
+  public ClassifierPool(final Factory factory, final int[] numThreadsPerInstance)
+      throws IOException {
+    final int numInstances = numThreadsPerInstance.length;
+    if (numInstances < 1) {
+      throw new IllegalArgumentException("Need at least one instance, got " + numInstances);
+    }
+    workers = new Worker[numInstances];
+    try {
+      for (int i = 0; i < numInstances; ++i) {
+        final Classifier classifier = factory.create();
+        classifier.setNumThreads(numThreadsPerInstance[i]);
+        workers[i] = new Worker(i, classifier);
+      }
+    } catch (final IOException | RuntimeException e) {
+      for (final Worker worker : workers) {
+        if (worker != null) {
+          worker.classifier.close();
+        }
+      }
+      throw e;
+    }
+    liveWorkers = numInstances;
+    for (final Worker worker : workers) {
+      worker.thread.start();
+    }
+    LOGGER.i(
+        "Started %d instances with %s threads",
+        numInstances,
+        Arrays.toString(numThreadsPerInstance));
+  }
+
+  private static int[] fill(final int numInstances, final int numThreadsPerInstance) {
+    final int[] numThreads = new int[Math.max(0, numInstances)];
+    Arrays.fill(numThreads, numThreadsPerInstance);
+    return numThreads;
+  }
+
+  public int getNumInstances() {
+    return workers.length;
+  }
+
+  /** Queues recognition of a bitmap, which must not be modified until the callback has run. */
+  public long submit(final Bitmap bitmap, final Callback callback) {
+    return enqueue(bitmap, null, null, callback);
+  }
+
+  /**
+   * Queues recognition of input already in the model's input format, see {@link
+   * Classifier#recognizeImage(ByteBuffer)}. The buffer must not be modified until the callback has
+   * run.
+   */
+  public long submit(final ByteBuffer inputData, final Callback callback) {
+    return enqueue(null, inputData, null, callback);
+  }
+
+  // If detections is set, the request is run with detect() into it, and the callback is given an
+  // empty list.
+  private synchronized long enqueue(
+      final Bitmap bitmap,
+      final ByteBuffer inputData,
+      final DetectionBatch detections,
+      final Callback callback) {
+    if (closed) {
+      throw new IllegalStateException("Pool has been closed");
+    }
+    final long sequence = nextSequence++;
+    requests.add(new Request(sequence, bitmap, inputData, detections, callback));
+    return sequence;
+  }
+
+  /**
+   * Runs a request on the pool and waits for it. The results are copies owned by the caller. What
+   * running the request threw is rethrown.
+   */
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final BlockingCallback callback = new BlockingCallback();
+    submit(bitmap, callback);
+    return callback.await();
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final ByteBuffer inputData) {
+    final BlockingCallback callback = new BlockingCallback();
+    submit(inputData, callback);
+    return callback.await();
+  }
+
+  /** Spreads the images over the instances, one request each, and waits for all of them. */
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final List<BlockingCallback> callbacks = new ArrayList<BlockingCallback>(bitmaps.size());
+    for (final Bitmap bitmap : bitmaps) {
+      final BlockingCallback callback = new BlockingCallback();
+      submit(bitmap, callback);
+      callbacks.add(callback);
+    }
+    final List<List<Recognition>> results = new ArrayList<List<Recognition>>(bitmaps.size());
+    for (final BlockingCallback callback : callbacks) {
+      results.add(callback.await());
+    }
+    return results;
+  }
+
+  /** Runs detection on the pool and waits for it. */
+  @Override
+  public void detect(final Bitmap bitmap, final DetectionBatch results) {
+    final BlockingCallback callback = new BlockingCallback();
+    enqueue(bitmap, null, results, callback);
+    callback.await();
+  }
+
+  @Override
+  public void detect(final ByteBuffer inputData, final DetectionBatch results) {
+    final BlockingCallback callback = new BlockingCallback();
+    enqueue(null, inputData, results, callback);
+    callback.await();
+  }
+
+  @Override
+  public void enableStatLogging(final boolean logStats) {}
+
+  /** Reports, per instance, the share of time since creation spent on requests. */
+  @Override
+  public String getStatString() {
+    final long elapsedMs = Math.max(1, SystemClock.uptimeMillis() - startTimeMs);
+    final StringBuilder builder = new StringBuilder();
+    for (final Worker worker : workers) {
+      final long busyMs;
+      final long runs;
+      synchronized (worker) {
+        busyMs = worker.busyMs;
+        runs = worker.runs;
+      }
+      builder.append(
+          String.format(
+              Locale.US,
+              "instance %d: %.1f%% busy, %d runs, %.1fms avg\n",
+              worker.index,
+              100.0f * busyMs / elapsedMs,
+              runs,
+              runs > 0 ? busyMs / (float) runs : 0.0f));
+    }
+    return builder.toString();
+  }
+
+  /** Stops the workers once the requests already submitted are done, and closes the instances. */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (int i = 0; i < workers.length; ++i) {
+        requests.add(Request.STOP);
+      }
+    }
+    for (final Worker worker : workers) {
+      try {
+        worker.thread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /** Sets the number of threads of every instance. */
+  @Override
+  public void setNumThreads(final int numThreads) {
+    for (final Worker worker : workers) {
+      synchronized (worker) {
+        worker.classifier.setNumThreads(numThreads);
+      }
+    }
+  }
+
+  @Override
+  public void setQuery(final DetectionQuery query) {
+    for (final Worker worker : workers) {
+      synchronized (worker) {
+        worker.classifier.setQuery(query);
+      }
+    }
+  }
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {
+    for (final Worker worker : workers) {
+      synchronized (worker) {
+        worker.classifier.setUseNNAPI(isChecked);
+      }
+    }
+  }
+
+  // Blocks the worker that finished a request until all earlier requests have been delivered.
+  // Not interruptible, as every later request waits for this one to be delivered. An interrupt is
+  // kept for the worker to stop on afterwards.
+  private synchronized void awaitTurn(final long sequence) {
+    boolean interrupted = false;
+    while (nextToDeliver != sequence) {
+      try {
+        wait();
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized void finishTurn() {
+    ++nextToDeliver;
+    notifyAll();
+  }
+
+  // Called by each worker as it stops. Once the last one has stopped, e.g. because all were
+  // interrupted, nothing would run the requests still queued, so they are delivered without
+  // results and the pool takes no more.
+  private void onWorkerStopped() {
+    final List<Request> orphans = new ArrayList<Request>();
+    synchronized (this) {
+      if (--liveWorkers > 0) {
+        return;
+      }
+      closed = true;
+      requests.drainTo(orphans);
+    }
+    for (final Request request : orphans) {
+      if (request != Request.STOP) {
+        LOGGER.w("No worker left for request %d", request.sequence);
+        if (request.detections != null) {
+          request.detections.clear();
+        }
+        deliver(request, null, null);
+      }
+    }
+  }
+
+  // Hands the results of a request, or what running it threw, to its callback in submission order,
+  // and lets the next request be delivered even if the callback fails.
+  private void deliver(
+      final Request request, final List<Recognition> results, final Throwable failure) {
+    awaitTurn(request.sequence);
+    try {
+      if (failure != null) {
+        request.callback.onFailure(request.sequence, failure);
+      } else {
+        request.callback.onResults(
+            request.sequence, results != null ? results : new ArrayList<Recognition>());
+      }
+    } catch (final RuntimeException e) {
+      LOGGER.e(e, "Callback for request %d failed", request.sequence);
+    } finally {
+      finishTurn();
+    }
+  }
+
+  private static class Request {
+    static final Request STOP = new Request(-1, null, null, null, null);
+
+    final long sequence;
+    final Bitmap bitmap;
+    final ByteBuffer inputData;
+    final DetectionBatch detections;
+    final Callback callback;
+
+    Request(
+        final long sequence,
+        final Bitmap bitmap,
+        final ByteBuffer inputData,
+        final DetectionBatch detections,
+        final Callback callback) {
+      this.sequence = sequence;
+      this.bitmap = bitmap;
+      this.inputData = inputData;
+      this.detections = detections;
+      this.callback = callback;
+    }
+  }
+
+  private class Worker implements Runnable {
+    final int index;
+    final Classifier classifier;
+    final Thread thread;
+
+    // Guarded by this, which is also held while the classifier runs.
+    long busyMs;
+    long runs;
+
+    Worker(final int index, final Classifier classifier) {
+      this.index = index;
+      this.classifier = classifier;
+      thread = new Thread(this, "classifier-pool-" + index);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Request request = requests.take();
+          if (request == Request.STOP) {
+            break;
+          }
+          process(request);
+        }
+      } catch (final InterruptedException e) {
+        LOGGER.w("Worker %d interrupted", index);
+      } finally {
+        synchronized (this) {
+          classifier.close();
+        }
+        onWorkerStopped();
+      }
+    }
+
+    private List<Recognition> run(final Request request) {
+      if (request.detections == null) {
+        return request.bitmap != null
+            ? classifier.recognizeImage(request.bitmap)
+            : classifier.recognizeImage(request.inputData);
+      }
+      if (request.bitmap != null) {
+        classifier.detect(request.bitmap, request.detections);
+      } else {
+        classifier.detect(request.inputData, request.detections);
+      }
+      return null;
+    }
+
+    private void process(final Request request) {
+      List<Recognition> results = null;
+      Throwable failure = null;
+      try {
+        synchronized (this) {
+          final long startTime = SystemClock.uptimeMillis();
+          try {
+            results = run(request);
+          } finally {
+            busyMs += SystemClock.uptimeMillis() - startTime;
+            ++runs;
+          }
+        }
+      } catch (final Throwable t) {
+        // Errors too: every later request waits for this one to be delivered.
+        LOGGER.e(t, "Request %d failed", request.sequence);
+        failure = t;
+        if (request.detections != null) {
+          request.detections.clear();
+        }
+      }
+
+      // Later requests wait here, holding on to their instance whose results they still refer to.
+      deliver(request, results, failure);
+    }
+  }
+
+  private static class BlockingCallback implements Callback {
+    private List<Recognition> results;
+    private Throwable failure;
+
+    @Override
+    public synchronized void onResults(final long sequence, final List<Recognition> results) {
+      this.results = results;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onFailure(final long sequence, final Throwable error) {
+      failure = error;
+      notifyAll();
+    }
+
+    // Rethrows what running the request threw, on the calling thread.
+    synchronized List<Recognition> await() {
+      boolean interrupted = false;
+      while (results == null && failure == null) {
+        try {
+          wait();
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure != null) {
+        throw new IllegalStateException("Request failed", failure);
+      }
+      return results;
+    }
+  }
+}
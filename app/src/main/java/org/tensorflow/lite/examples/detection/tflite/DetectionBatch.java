@@ -0,0 +1,241 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+
+/**
+ * The detections of one image, stored in parallel primitive arrays so they can be filtered, mapped
+ * to other coordinates and tracked without an object per detection. A batch is meant to be reused
+ * from frame to frame. It only allocates when it grows to hold more detections than before, and in
+ * the Recognition adapters.
+ *
+ * <p>Detection i has the box boxes[4 * i] to boxes[4 * i + 3] as left, top, right and bottom, the
+ * score scores[i], and the class classIds[i], which indexes the labels of the model that produced
+ * it.
+ */
+public class DetectionBatch {
+  // Ids of the Recognitions made by toRecognitions(), so that they are not formatted every time.
+  private static final String[] IDS = new String[100];
+
+  static {
+    for (int i = 0; i < IDS.length; ++i) {
+      IDS[i] = Integer.toString(i);
+    }
+  }
+
+  private float[] boxes;
+  private int[] classIds;
+  private float[] scores;
+  private int count = 0;
+  private List<String> labels;
+  // Scratch space for transform().
+  private final RectF box = new RectF();
+
+  /** @param capacity The number of detections the batch can hold before it has to grow. */
+  public DetectionBatch(final int capacity) {
+    boxes = new float[capacity * 4];
+    classIds = new int[capacity];
+    scores = new float[capacity];
+  }
+
+  public int getCapacity() {
+    return scores.length;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public void clear() {
+    count = 0;
+  }
+
+  /** Sets the labels that class ids index, usually those of the model. The list isn't copied. */
+  public void setLabels(final List<String> labels) {
+    this.labels = labels;
+  }
+
+  /** Appends a detection. */
+  public void add(
+      final float left,
+      final float top,
+      final float right,
+      final float bottom,
+      final int classId,
+      final float score) {
+    if (count == scores.length) {
+      ensureCapacity(Math.max(1, count * 2));
+    }
+    final int b = count * 4;
+    boxes[b] = left;
+    boxes[b + 1] = top;
+    boxes[b + 2] = right;
+    boxes[b + 3] = bottom;
+    classIds[count] = classId;
+    scores[count] = score;
+    ++count;
+  }
+
+  public float getLeft(final int i) {
+    return boxes[i * 4];
+  }
+
+  public float getTop(final int i) {
+    return boxes[i * 4 + 1];
+  }
+
+  public float getRight(final int i) {
+    return boxes[i * 4 + 2];
+  }
+
+  public float getBottom(final int i) {
+    return boxes[i * 4 + 3];
+  }
+
+  public float getWidth(final int i) {
+    return boxes[i * 4 + 2] - boxes[i * 4];
+  }
+
+  public float getHeight(final int i) {
+    return boxes[i * 4 + 3] - boxes[i * 4 + 1];
+  }
+
+  /** Writes the box of detection i into box. */
+  public void getBox(final int i, final RectF box) {
+    box.set(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+  }
+
+  public int getClassId(final int i) {
+    return classIds[i];
+  }
+
+  public float getScore(final int i) {
+    return scores[i];
+  }
+
+  /** Returns the label of detection i, or null if its class has none. */
+  public String getLabel(final int i) {
+    final int classId = classIds[i];
+    return labels != null && classId >= 0 && classId < labels.size() ? labels.get(classId) : null;
+  }
+
+  /** Drops the detections scoring below minimumScore, keeping the others in order. */
+  public void filter(final float minimumScore) {
+    int kept = 0;
+    for (int i = 0; i < count; ++i) {
+      if (scores[i] >= minimumScore) {
+        move(i, kept++);
+      }
+    }
+    count = kept;
+  }
+
+  /** Keeps at most the first maxCount detections. */
+  public void truncate(final int maxCount) {
+    count = Math.min(count, maxCount);
+  }
+
+  /** Maps every box through matrix, as {@link Matrix#mapRect(RectF)} does. */
+  public void transform(final Matrix matrix) {
+    for (int i = 0; i < count; ++i) {
+      getBox(i, box);
+      matrix.mapRect(box);
+      final int b = i * 4;
+      boxes[b] = box.left;
+      boxes[b + 1] = box.top;
+      boxes[b + 2] = box.right;
+      boxes[b + 3] = box.bottom;
+    }
+  }
+
+  /** Makes this batch a copy of other. */
+  public void copyFrom(final DetectionBatch other) {
+    ensureCapacity(other.count);
+    System.arraycopy(other.boxes, 0, boxes, 0, other.count * 4);
+    System.arraycopy(other.classIds, 0, classIds, 0, other.count);
+    System.arraycopy(other.scores, 0, scores, 0, other.count);
+    count = other.count;
+    labels = other.labels;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (capacity > scores.length) {
+      boxes = Arrays.copyOf(boxes, capacity * 4);
+      classIds = Arrays.copyOf(classIds, capacity);
+      scores = Arrays.copyOf(scores, capacity);
+    }
+  }
+
+  private void move(final int from, final int to) {
+    if (from == to) {
+      return;
+    }
+    System.arraycopy(boxes, from * 4, boxes, to * 4, 4);
+    classIds[to] = classIds[from];
+    scores[to] = scores[from];
+  }
+
+  /** Converts the detections into new Recognitions, identified by their index in the batch. */
+  public List<Recognition> toRecognitions() {
+    final List<Recognition> recognitions = new ArrayList<Recognition>(count);
+    for (int i = 0; i < count; ++i) {
+      final RectF location = new RectF();
+      getBox(i, location);
+      final String id = i < IDS.length ? IDS[i] : Integer.toString(i);
+      recognitions.add(new Recognition(id, getLabel(i), scores[i], location));
+    }
+    return recognitions;
+  }
+
+  /**
+   * Replaces the detections with Recognitions, e.g. from code that still produces those. Each
+   * distinct title becomes a class of a label list private to this batch, and Recognitions without
+   * a location are skipped.
+   */
+  public void setRecognitions(final List<Recognition> recognitions) {
+    final List<String> titles = new ArrayList<String>();
+    clear();
+    for (final Recognition recognition : recognitions) {
+      final RectF location = recognition.getLocation();
+      if (location == null) {
+        continue;
+      }
+      int classId = titles.indexOf(recognition.getTitle());
+      if (classId < 0) {
+        classId = titles.size();
+        titles.add(recognition.getTitle());
+      }
+      add(
+          location.left,
+          location.top,
+          location.right,
+          location.bottom,
+          classId,
+          recognition.getConfidence());
+    }
+    labels = titles;
+  }
+}
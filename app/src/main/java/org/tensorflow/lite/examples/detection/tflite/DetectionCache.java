@@ -0,0 +1,248 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Locale;
+
+/**
+ * Remembers the detections of recently seen views, keyed by a perceptual hash of the frame, so a
+ * view that is seen again can reuse them instead of running the detector. A frame matches an entry
+ * whose hash is within a Hamming distance of its own. The cache holds a fixed number of entries,
+ * replacing the least recently used one when full, and entries expire after a maximum age.
+ *
+ * <p>Detections only cover what the detector saw, so a hash must also identify the region of the
+ * frame they were detected in, see {@link
+ * org.tensorflow.lite.examples.detection.env.PerceptualHash#withRegion}.
+ *
+ * <p>To measure how often a match is wrong, every auditInterval-th hit should still be detected
+ * on, and the result passed to {@link #audit(DetectionBatch, DetectionBatch)}.
+ *
+ * <p>Thread safe, so a frame can be looked up before it is converted, on the camera thread, while
+ * detections are stored from the inference thread. Entries and their batches are allocated once,
+ * up front.
+ */
+public class DetectionCache {
+  // Overlap, as intersection over union, from which an audited detection matches a cached one.
+  private static final float AUDIT_MIN_IOU = 0.5f;
+  // Rough size of a DetectionBatch or entry without its arrays.
+  private static final int OBJECT_OVERHEAD_BYTES = 64;
+
+  private static class Entry {
+    final DetectionBatch detections;
+    boolean valid = false;
+    long hash;
+    long createdMs;
+    long lastUsedMs;
+
+    Entry(final int capacity) {
+      detections = new DetectionBatch(capacity);
+    }
+  }
+
+  private final Entry[] entries;
+  private final int maxDistance;
+  private final long maxAgeMs;
+  private final int auditInterval;
+
+  private long lookups = 0;
+  private long hits = 0;
+  private long audits = 0;
+  private long falseHits = 0;
+
+  /**
+   * @param size Number of entries.
+   * @param detectionsPerEntry Initial capacity of each entry's batch.
+   * @param maxDistance Largest Hamming distance between hashes that counts as the same view.
+   * @param maxAgeMs Age from which an entry is no longer used.
+   * @param auditInterval Audit every this many hits. Zero to never audit.
+   */
+  public DetectionCache(
+      final int size,
+      final int detectionsPerEntry,
+      final int maxDistance,
+      final long maxAgeMs,
+      final int auditInterval) {
+    entries = new Entry[size];
+    for (int i = 0; i < size; ++i) {
+      entries[i] = new Entry(detectionsPerEntry);
+    }
+    this.maxDistance = maxDistance;
+    this.maxAgeMs = maxAgeMs;
+    this.auditInterval = auditInterval;
+  }
+
+  /**
+   * Copies the detections of the entry closest to hash within the distance into results, and
+   * returns whether there was one. A copy, as the entry may be replaced before they are used.
+   */
+  public synchronized boolean find(
+      final long hash, final long nowMs, final DetectionBatch results) {
+    ++lookups;
+    final int entry = findClosest(hash, nowMs);
+    if (entry < 0) {
+      return false;
+    }
+    ++hits;
+    entries[entry].lastUsedMs = nowMs;
+    results.copyFrom(entries[entry].detections);
+    return true;
+  }
+
+  /** Returns whether the last hit should be checked against a real detection. */
+  public synchronized boolean shouldAudit() {
+    return auditInterval > 0 && hits % auditInterval == 0;
+  }
+
+  /**
+   * Compares the detections find() returned for a frame with those actually detected on it, and
+   * counts a false hit if they differ.
+   */
+  public synchronized void audit(final DetectionBatch cached, final DetectionBatch actual) {
+    ++audits;
+    if (!matches(cached, actual)) {
+      ++falseHits;
+    }
+  }
+
+  /**
+   * Stores the detections of a frame. They replace those of the closest entry within the distance,
+   * or else of an expired or the least recently used entry.
+   */
+  public synchronized void put(final long hash, final long nowMs, final DetectionBatch detections) {
+    int target = findClosest(hash, nowMs);
+    if (target < 0) {
+      target = 0;
+      for (int i = 0; i < entries.length; ++i) {
+        if (!entries[i].valid) {
+          target = i;
+          break;
+        }
+        if (entries[i].lastUsedMs < entries[target].lastUsedMs) {
+          target = i;
+        }
+      }
+    }
+    final Entry entry = entries[target];
+    entry.valid = true;
+    entry.hash = hash;
+    entry.createdMs = nowMs;
+    entry.lastUsedMs = nowMs;
+    entry.detections.copyFrom(detections);
+  }
+
+  public synchronized long getLookups() {
+    return lookups;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized float getHitRate() {
+    return lookups > 0 ? (float) hits / lookups : 0.0f;
+  }
+
+  public synchronized long getAudits() {
+    return audits;
+  }
+
+  public synchronized long getFalseHits() {
+    return falseHits;
+  }
+
+  /** Returns the share of audited hits whose detections differed from the real ones. */
+  public synchronized float getFalseHitRate() {
+    return audits > 0 ? (float) falseHits / audits : 0.0f;
+  }
+
+  /** Returns an estimate of the memory the entries take, in bytes. */
+  public long getMemoryBytes() {
+    long bytes = 0;
+    for (final Entry entry : entries) {
+      // Four box coordinates, a class id and a score per detection.
+      bytes += 2 * OBJECT_OVERHEAD_BYTES + entry.detections.getCapacity() * (4 * 4 + 4 + 4);
+    }
+    return bytes;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "%.1f%% hits of %d lookups, %d/%d audited hits false, %.1fkB",
+        getHitRate() * 100.0f,
+        lookups,
+        falseHits,
+        audits,
+        getMemoryBytes() / 1024.0f);
+  }
+
+  // Returns the valid entry closest to hash within the distance, or -1. Expired entries are
+  // dropped on the way.
+  private int findClosest(final long hash, final long nowMs) {
+    int closest = -1;
+    int closestDistance = maxDistance + 1;
+    for (int i = 0; i < entries.length; ++i) {
+      final Entry entry = entries[i];
+      if (!entry.valid) {
+        continue;
+      }
+      if (nowMs - entry.createdMs > maxAgeMs) {
+        entry.valid = false;
+        continue;
+      }
+      final int distance = Long.bitCount(entry.hash ^ hash);
+      if (distance < closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  // Whether both batches have the same number of detections, and each actual detection has a
+  // cached one of the same class that overlaps it enough.
+  private static boolean matches(final DetectionBatch cached, final DetectionBatch actual) {
+    if (cached.getCount() != actual.getCount()) {
+      return false;
+    }
+    for (int i = 0; i < actual.getCount(); ++i) {
+      boolean found = false;
+      for (int j = 0; j < cached.getCount() && !found; ++j) {
+        found =
+            cached.getClassId(j) == actual.getClassId(i)
+                && intersectionOverUnion(cached, j, actual, i) >= AUDIT_MIN_IOU;
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static float intersectionOverUnion(
+      final DetectionBatch a, final int i, final DetectionBatch b, final int j) {
+    final float width =
+        Math.min(a.getRight(i), b.getRight(j)) - Math.max(a.getLeft(i), b.getLeft(j));
+    final float height =
+        Math.min(a.getBottom(i), b.getBottom(j)) - Math.max(a.getTop(i), b.getTop(j));
+    if (width <= 0 || height <= 0) {
+      return 0.0f;
+    }
+    final float intersection = width * height;
+    return intersection
+        / (a.getWidth(i) * a.getHeight(i) + b.getWidth(j) * b.getHeight(j) - intersection);
+  }
+}
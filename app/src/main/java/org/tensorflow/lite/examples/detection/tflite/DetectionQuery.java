@@ -0,0 +1,85 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.BitSet;
+
+/**
+ * Which detections a {@link Classifier} should return: those scoring at least a minimum, of the
+ * allowed classes, and no more than a maximum number of them. Classifiers apply the query while
+ * decoding, so rejected detections cost nothing further.
+ *
+ * <p>A query is mutable so it can be adjusted from frame to frame without allocating.
+ */
+public class DetectionQuery {
+  private float minimumScore = 0.0f;
+  private int maxResults = Integer.MAX_VALUE;
+  // Indexed by class id. Only used if masked is set, as an empty mask would reject everything.
+  private final BitSet classMask = new BitSet();
+  private boolean masked = false;
+
+  public float getMinimumScore() {
+    return minimumScore;
+  }
+
+  public DetectionQuery setMinimumScore(final float minimumScore) {
+    this.minimumScore = minimumScore;
+    return this;
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  public DetectionQuery setMaxResults(final int maxResults) {
+    if (maxResults < 0) {
+      throw new IllegalArgumentException("Negative result count " + maxResults);
+    }
+    this.maxResults = maxResults;
+    return this;
+  }
+
+  /**
+   * Adds a class, by its index in the model's label map, to those accepted. Until a class is added,
+   * all are accepted.
+   */
+  public DetectionQuery allowClass(final int classId) {
+    classMask.set(classId);
+    masked = true;
+    return this;
+  }
+
+  /** Accepts every class again. */
+  public DetectionQuery allowAllClasses() {
+    classMask.clear();
+    masked = false;
+    return this;
+  }
+
+  /** Returns whether a detection passes the score and class criteria. */
+  public boolean accepts(final int classId, final float score) {
+    return score >= minimumScore && (!masked || (classId >= 0 && classMask.get(classId)));
+  }
+
+  /** Makes this query a copy of other. */
+  public void set(final DetectionQuery other) {
+    minimumScore = other.minimumScore;
+    maxResults = other.maxResults;
+    classMask.clear();
+    classMask.or(other.classMask);
+    masked = other.masked;
+  }
+}
@@ -0,0 +1,52 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The detection models that can be switched between at runtime, by name. */
+public class ModelRegistry {
+  private final Map<String, ModelSpec> models = new LinkedHashMap<String, ModelSpec>();
+  private final String defaultName;
+
+  /** @param defaultModel The model to start with. */
+  public ModelRegistry(final ModelSpec defaultModel) {
+    defaultName = defaultModel.getName();
+    register(defaultModel);
+  }
+
+  /** Adds a model, replacing any registered under the same name. */
+  public synchronized void register(final ModelSpec model) {
+    models.put(model.getName(), model);
+  }
+
+  /** Returns the model registered under name, or null if there is none. */
+  public synchronized ModelSpec get(final String name) {
+    return models.get(name);
+  }
+
+  public synchronized ModelSpec getDefault() {
+    return models.get(defaultName);
+  }
+
+  /** Returns the registered models in the order they were first registered. */
+  public synchronized List<ModelSpec> getModels() {
+    return new ArrayList<ModelSpec>(models.values());
+  }
+}
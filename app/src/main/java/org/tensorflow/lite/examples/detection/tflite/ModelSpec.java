@@ -0,0 +1,112 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.IOException;
+
+/** Describes a detection model in the assets and the input geometry it expects. */
+public class ModelSpec {
+  private final String name;
+  private final String modelFilename;
+  private final String labelFilename;
+  private final int inputSize;
+  private final boolean isQuantized;
+  // Null for the defaults. Only used by models that output raw SSD boxes.
+  private final SsdAnchorDecoder.Options ssdOptions;
+
+  /**
+   * @param name Name the model is registered under.
+   * @param modelFilename The filepath of the model in the assets.
+   * @param labelFilename The filepath of label file for classes, as a file:///android_asset/ URI.
+   * @param inputSize The size of image input
+   * @param isQuantized Boolean representing model is quantized or not
+   */
+  public ModelSpec(
+      final String name,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized) {
+    this(name, modelFilename, labelFilename, inputSize, isQuantized, null);
+  }
+
+  /**
+   * As {@link #ModelSpec(String, String, String, int, boolean)}, for a model without the
+   * TFLite_Detection_PostProcess op, whose boxes are suppressed in Java with the given settings.
+   */
+  public ModelSpec(
+      final String name,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final SsdAnchorDecoder.Options ssdOptions) {
+    this.name = name;
+    this.modelFilename = modelFilename;
+    this.labelFilename = labelFilename;
+    this.inputSize = inputSize;
+    this.isQuantized = isQuantized;
+    this.ssdOptions = ssdOptions;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getModelFilename() {
+    return modelFilename;
+  }
+
+  public String getLabelFilename() {
+    return labelFilename;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public boolean isQuantized() {
+    return isQuantized;
+  }
+
+  public SsdAnchorDecoder.Options getSsdOptions() {
+    return ssdOptions;
+  }
+
+  /** Loads the model. This memory-maps the model and reads the labels, so avoid the UI thread. */
+  public Classifier create(final AssetManager assetManager) throws IOException {
+    return create(assetManager, null);
+  }
+
+  /** Loads the model and starts warming it up in the background, see {@link WarmUp}. */
+  public Classifier create(final AssetManager assetManager, final WarmUp warmUp)
+      throws IOException {
+    final TFLiteObjectDetectionAPIModel.Options options =
+        new TFLiteObjectDetectionAPIModel.Options().setWarmUp(warmUp);
+    if (ssdOptions != null) {
+      options.setSsdOptions(ssdOptions);
+    }
+    return TFLiteObjectDetectionAPIModel.create(
+        assetManager, modelFilename, labelFilename, inputSize, isQuantized, options);
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + modelFilename + ", " + inputSize + "px, "
+        + (isQuantized ? "quantized" : "float") + ")";
+  }
+}
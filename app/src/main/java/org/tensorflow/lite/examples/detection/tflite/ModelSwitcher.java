@@ -0,0 +1,117 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Hands detection over from one loaded model to another between frames, without stalling either.
+ * The next model is loaded and warmed up on a thread of its own, and taken over by the frame thread
+ * at the start of a frame. The previous one is closed on the inference executor, so only after any
+ * detection still running on it has finished.
+ *
+ * @param <T> A loaded model, together with whatever is shaped for it, e.g. its input buffers.
+ */
+public class ModelSwitcher<T> {
+  private static final Logger LOGGER = new Logger();
+
+  /** Loads a model, returning once it can detect without stalling. Runs on a thread of its own. */
+  public interface Loader<T> {
+    T load(ModelSpec spec) throws IOException, InterruptedException;
+  }
+
+  /** Releases a loaded model. */
+  public interface Closer<T> {
+    void close(T model);
+  }
+
+  private final Loader<T> loader;
+  private final Closer<T> closer;
+  private final Executor inferenceExecutor;
+  private final AtomicReference<T> pending = new AtomicReference<T>();
+  // Only replaced on the frame thread.
+  private volatile T current;
+
+  /**
+   * @param initial The model to start with.
+   * @param inferenceExecutor Runs detection, one task at a time.
+   */
+  public ModelSwitcher(
+      final T initial,
+      final Loader<T> loader,
+      final Closer<T> closer,
+      final Executor inferenceExecutor) {
+    this.current = initial;
+    this.loader = loader;
+    this.closer = closer;
+    this.inferenceExecutor = inferenceExecutor;
+  }
+
+  public T getCurrent() {
+    return current;
+  }
+
+  /**
+   * Starts loading a model, which {@link #takeOverPending()} then switches to. A model loaded
+   * earlier that has not been taken over yet is closed instead.
+   *
+   * @return The thread loading the model.
+   */
+  public Thread switchTo(final ModelSpec spec) {
+    final Thread thread =
+        new Thread("model-loader") {
+          @Override
+          public void run() {
+            try {
+              final T model = loader.load(spec);
+              // A model that was loaded but never taken over has not been used, so can be closed.
+              final T replaced = pending.getAndSet(model);
+              if (replaced != null) {
+                closer.close(replaced);
+              }
+              LOGGER.i("Loaded %s", spec);
+            } catch (final IOException e) {
+              LOGGER.e(e, "Failed to load %s", spec);
+            } catch (final InterruptedException e) {
+              LOGGER.e(e, "Interrupted while loading %s", spec);
+            }
+          }
+        };
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Switches to the model loaded last, if any, and queues closing the previous one on the
+   * inference executor. Call on the frame thread, between frames.
+   *
+   * @return The previous model, which may still be detecting, or null if there was no switch.
+   */
+  public T takeOverPending() {
+    final T next = pending.getAndSet(null);
+    if (next == null) {
+      return null;
+    }
+    final T previous = current;
+    current = next;
+    // Queued behind any detection still running on the previous model.
+    inferenceExecutor.execute(() -> closer.close(previous));
+    return previous;
+  }
+}
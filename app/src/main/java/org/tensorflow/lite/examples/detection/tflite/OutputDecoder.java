@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Turns the output tensors of a detection model into detections. A decoder owns the direct buffers
+ * the interpreter writes the outputs to, which are sized for a fixed number of images per run and
+ * stay bound from run to run. Outputs may be float or quantized, see {@link OutputTensor}.
+ */
+public abstract class OutputDecoder {
+  protected final int inputSize;
+  protected final int batchSize;
+  // Indexed by output tensor.
+  protected final OutputTensor.Format[] formats;
+  private final Map<Integer, Object> outputs = new HashMap<>();
+  private final List<OutputTensor> tensors = new ArrayList<>();
+
+  /**
+   * @param inputSize The size of image input, which boxes are scaled to.
+   * @param batchSize Number of images per run.
+   * @param formats How each output tensor is stored, see {@link #readFormats(Interpreter)}.
+   */
+  protected OutputDecoder(
+      final int inputSize, final int batchSize, final OutputTensor.Format[] formats) {
+    this.inputSize = inputSize;
+    this.batchSize = batchSize;
+    this.formats = formats;
+  }
+
+  /** Returns the format of each output tensor of the interpreter. */
+  protected static OutputTensor.Format[] readFormats(final Interpreter interpreter) {
+    final OutputTensor.Format[] formats =
+        new OutputTensor.Format[interpreter.getOutputTensorCount()];
+    for (int i = 0; i < formats.length; ++i) {
+      formats[i] = OutputTensor.Format.of(interpreter, i);
+    }
+    return formats;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /** Returns the outputs to run the interpreter with. */
+  public Map<Integer, Object> getOutputs() {
+    return outputs;
+  }
+
+  /** Prepares the outputs for the next run. The interpreter writes from each buffer's position. */
+  public void rewind() {
+    for (final OutputTensor tensor : tensors) {
+      tensor.getBuffer().rewind();
+    }
+  }
+
+  /** Returns the largest number of detections decode() returns per image. */
+  public abstract int getMaxDetections();
+
+  /**
+   * Replaces results with the detections of one image of the last run that query accepts. Boxes
+   * are in input pixels, and class ids index the model's label map.
+   *
+   * @param image Index of the image in the batch.
+   */
+  public abstract void decode(int image, DetectionQuery query, DetectionBatch results);
+
+  /** Returns a decoder of the same model, with outputs for runs of batchSize images. */
+  public abstract OutputDecoder withBatchSize(int batchSize);
+
+  /** Allocates the buffer of the output tensor at index, of numElements for the whole batch. */
+  protected OutputTensor bindOutput(final int index, final int numElements) {
+    final OutputTensor tensor = new OutputTensor(formats[index], numElements);
+    tensors.add(tensor);
+    outputs.put(index, tensor.getBuffer());
+    return tensor;
+  }
+}
@@ -0,0 +1,154 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+/**
+ * The direct buffer an output tensor is copied into, which holds either floats or 8-bit quantized
+ * values. Values can be read dequantized, or compared as they are stored against a threshold
+ * quantized with {@link #quantizeThreshold(float)}, so that values that fail the comparison never
+ * have to be dequantized.
+ */
+public final class OutputTensor {
+  /** How a tensor's values are stored. */
+  public static final class Format {
+    public static final Format FLOAT32 = new Format(false, false, 1.0f, 0);
+
+    final boolean quantized;
+    final boolean signed;
+    final float scale;
+    final int zeroPoint;
+
+    private Format(
+        final boolean quantized, final boolean signed, final float scale, final int zeroPoint) {
+      this.quantized = quantized;
+      this.signed = signed;
+      this.scale = scale;
+      this.zeroPoint = zeroPoint;
+    }
+
+    /** Reads the type and quantization parameters of an output tensor of the interpreter. */
+    public static Format of(final Interpreter interpreter, final int index) {
+      final Tensor tensor = interpreter.getOutputTensor(index);
+      final DataType dataType = tensor.dataType();
+      if (dataType == DataType.FLOAT32) {
+        return FLOAT32;
+      }
+      if (dataType != DataType.UINT8 && dataType != DataType.INT8) {
+        throw new IllegalArgumentException("Unsupported type " + dataType + " of output " + index);
+      }
+      final Tensor.QuantizationParams params = tensor.quantizationParams();
+      if (params.getScale() <= 0) {
+        throw new IllegalArgumentException("Output " + index + " is not quantized");
+      }
+      return quantized(dataType == DataType.INT8, params.getScale(), params.getZeroPoint());
+    }
+
+    // Package private so that quantized outputs can be tested without a model.
+    static Format quantized(final boolean signed, final float scale, final int zeroPoint) {
+      return new Format(true, signed, scale, zeroPoint);
+    }
+
+    @Override
+    public String toString() {
+      return quantized
+          ? (signed ? "int8" : "uint8") + " (scale " + scale + ", zero point " + zeroPoint + ")"
+          : "float32";
+    }
+  }
+
+  private final Format format;
+  private final ByteBuffer buffer;
+  // Float view of the buffer, null for quantized tensors.
+  private final FloatBuffer floats;
+
+  /** Allocates a buffer of numElements values of the given format. */
+  public OutputTensor(final Format format, final int numElements) {
+    this.format = format;
+    buffer = ByteBuffer.allocateDirect(numElements * (format.quantized ? 1 : 4));
+    buffer.order(ByteOrder.nativeOrder());
+    floats = format.quantized ? null : buffer.asFloatBuffer();
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public boolean isQuantized() {
+    return format.quantized;
+  }
+
+  /** Returns the buffer to bind to the interpreter. */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** Returns value i, dequantized if need be. */
+  public float get(final int i) {
+    return format.quantized ? dequantize(getQuantized(i)) : floats.get(i);
+  }
+
+  /** Returns value i of a quantized tensor as it is stored. */
+  public int getQuantized(final int i) {
+    return toQuantized(buffer.get(i));
+  }
+
+  /** Converts a byte of a quantized tensor into the value it stores. */
+  public int toQuantized(final byte value) {
+    return format.signed ? value : value & 0xFF;
+  }
+
+  public float dequantize(final int value) {
+    return (value - format.zeroPoint) * format.scale;
+  }
+
+  /**
+   * Returns the smallest stored value of a quantized tensor that dequantizes to at least
+   * threshold, so that v >= quantizeThreshold(t) exactly when dequantize(v) >= t.
+   */
+  public int quantizeThreshold(final float threshold) {
+    final int min = format.signed ? -128 : 0;
+    final int max = format.signed ? 127 : 255;
+    int value = (int) Math.ceil(threshold / format.scale + format.zeroPoint);
+    value = Math.max(min, Math.min(max + 1, value));
+    // Correct for rounding, so the comparison agrees with the dequantized values.
+    while (value > min && dequantize(value - 1) >= threshold) {
+      --value;
+    }
+    while (value <= max && dequantize(value) < threshold) {
+      ++value;
+    }
+    return value;
+  }
+
+  /** Copies values from offset on into a float tensor's destination. */
+  public void copyTo(final int offset, final float[] destination) {
+    floats.position(offset);
+    floats.get(destination);
+  }
+
+  /** Copies values from offset on, as they are stored, into a quantized tensor's destination. */
+  public void copyTo(final int offset, final byte[] destination) {
+    buffer.position(offset);
+    buffer.get(destination);
+  }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Decodes models that end with the TFLite_Detection_PostProcess op, which outputs the final boxes,
+ * classes and scores, and the number of detections, in that order. The op outputs floats even in
+ * quantized models, but quantized outputs are read as well. Quantized scores are compared with the
+ * query's minimum as they are stored, and only those that pass it are dequantized.
+ */
+public class PostProcessedDecoder extends OutputDecoder {
+  // SSD Mobilenet V1 Model assumes class 0 is background class
+  // in label file and class labels start from 1 to number_of_classes+1,
+  // while outputClasses correspond to class index from 0 to number_of_classes
+  private static final int LABEL_OFFSET = 1;
+
+  private final int numDetections;
+  // outputLocations: shape [Batchsize, NUM_DETECTIONS, 4]
+  // contains the location of detected boxes
+  private final OutputTensor outputLocations;
+  // outputClasses: shape [Batchsize, NUM_DETECTIONS]
+  // contains the classes of detected boxes
+  private final OutputTensor outputClasses;
+  // outputScores: shape [Batchsize, NUM_DETECTIONS]
+  // contains the scores of detected boxes
+  private final OutputTensor outputScores;
+
+  /**
+   * @param interpreter The model, whose outputs are read for runs of one image.
+   * @param inputSize The size of image input
+   * @param numDetections Number of detections the op outputs per image.
+   */
+  public PostProcessedDecoder(
+      final Interpreter interpreter, final int inputSize, final int numDetections) {
+    this(inputSize, numDetections, 1, readFormats(interpreter));
+  }
+
+  // Package private so that decoding can be tested without a model.
+  PostProcessedDecoder(
+      final int inputSize,
+      final int numDetections,
+      final int batchSize,
+      final OutputTensor.Format[] formats) {
+    super(inputSize, batchSize, formats);
+    this.numDetections = numDetections;
+    outputLocations = bindOutput(0, batchSize * numDetections * 4);
+    outputClasses = bindOutput(1, batchSize * numDetections);
+    outputScores = bindOutput(2, batchSize * numDetections);
+    // numDetections: shape [Batchsize]
+    bindOutput(3, batchSize);
+  }
+
+  @Override
+  public int getMaxDetections() {
+    return numDetections;
+  }
+
+  @Override
+  public void decode(final int image, final DetectionQuery query, final DetectionBatch results) {
+    final int first = image * numDetections;
+    final int maxResults = query.getMaxResults();
+    final boolean quantized = outputScores.isQuantized();
+    final int threshold = quantized ? outputScores.quantizeThreshold(query.getMinimumScore()) : 0;
+    results.clear();
+    for (int i = first; i < first + numDetections && results.getCount() < maxResults; ++i) {
+      // Rejected rows are skipped before their box is read.
+      final float score;
+      if (quantized) {
+        final int value = outputScores.getQuantized(i);
+        if (value < threshold) {
+          continue;
+        }
+        score = outputScores.dequantize(value);
+      } else {
+        score = outputScores.get(i);
+      }
+      final int classId = (int) outputClasses.get(i) + LABEL_OFFSET;
+      if (!query.accepts(classId, score)) {
+        continue;
+      }
+      // Locations are [top, left, bottom, right], normalized to the input size.
+      results.add(
+          outputLocations.get(i * 4 + 1) * inputSize,
+          outputLocations.get(i * 4) * inputSize,
+          outputLocations.get(i * 4 + 3) * inputSize,
+          outputLocations.get(i * 4 + 2) * inputSize,
+          classId,
+          score);
+    }
+  }
+
+  @Override
+  public OutputDecoder withBatchSize(final int batchSize) {
+    return new PostProcessedDecoder(inputSize, numDetections, batchSize, formats);
+  }
+}
@@ -0,0 +1,353 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.os.Trace;
+import java.util.Arrays;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Decodes SSD models exported without the TFLite_Detection_PostProcess op, whose outputs are the
+ * raw box encodings relative to a set of anchors, [Batchsize, anchors, 4], and the class scores
+ * with background, [Batchsize, anchors, classes + 1]. The boxes are decoded and non-max
+ * suppression is run in Java, so its cost can be tuned with {@link Options}.
+ *
+ * <p>Fully quantized models may output 8-bit scores and box encodings. Their scores are compared
+ * with the query's threshold as they are stored, and only those that pass it are dequantized.
+ *
+ * <p>Only boxes of candidates that pass the query and the score floor of the {@link Options} are
+ * decoded. Candidates are sorted by score once, and each is compared against the detections kept
+ * so far, so suppression stops as soon as enough detections are kept.
+ */
+public class SsdAnchorDecoder extends OutputDecoder {
+  // Scale factors of the box coder SSD models are trained with, for y, x, height and width.
+  private static final float Y_SCALE = 10.0f;
+  private static final float X_SCALE = 10.0f;
+  private static final float H_SCALE = 5.0f;
+  private static final float W_SCALE = 5.0f;
+
+  /** Non-max suppression settings. */
+  public static class Options {
+    /**
+     * Defaults of the TFLite_Detection_PostProcess op of exported SSD models, except for a higher
+     * score floor. At the op's floor of 1e-8 nearly every anchor and class pair of a query without
+     * a minimum score would be sorted, about 172k for SSD MobileNet.
+     */
+    public static final Options DEFAULT = new Options(0.05f, 0.6f, 100, 10, false);
+
+    public final float minScore;
+    public final float iouThreshold;
+    public final int maxCandidates;
+    public final int maxDetections;
+    public final boolean classAgnostic;
+
+    /**
+     * @param minScore Score below which a candidate is dropped whatever the query, as the op's
+     *     nms_score_threshold. At least zero.
+     * @param iouThreshold Overlap, as intersection over union, above which the lower scoring of
+     *     two boxes is suppressed.
+     * @param maxCandidates Number of best scoring candidates suppression considers, i.e. the top-k
+     *     applied before it.
+     * @param maxDetections Largest number of detections returned per image.
+     * @param classAgnostic Whether boxes suppress each other regardless of class. Each anchor then
+     *     only yields its best class, which makes for far fewer candidates.
+     */
+    public Options(
+        final float minScore,
+        final float iouThreshold,
+        final int maxCandidates,
+        final int maxDetections,
+        final boolean classAgnostic) {
+      if (!(minScore >= 0.0f)) {
+        throw new IllegalArgumentException("Score floor must be at least zero, got " + minScore);
+      }
+      this.minScore = minScore;
+      this.iouThreshold = iouThreshold;
+      this.maxCandidates = maxCandidates;
+      this.maxDetections = maxDetections;
+      this.classAgnostic = classAgnostic;
+    }
+  }
+
+  private final float[] anchors;
+  private final int numAnchors;
+  // Including the background class 0, so class ids are the same as in the label map.
+  private final int numClasses;
+  private final int boxIndex;
+  private final int classIndex;
+  private final Options options;
+  private final OutputTensor boxEncodings;
+  private final OutputTensor classPredictions;
+
+  // The class scores of the image being decoded, in scores or, for quantized models, in
+  // quantizedScores as they are stored.
+  private final float[] scores;
+  private final byte[] quantizedScores;
+  // Candidates of the image being decoded. Each key holds a candidate's score in its high bits and
+  // its index in the low bits, so sorting the keys sorts the candidates by score.
+  private long[] candidateKeys;
+  private int[] candidateAnchors;
+  private int[] candidateClasses;
+  // The box decoded last, in input pixels.
+  private float left;
+  private float top;
+  private float right;
+  private float bottom;
+
+  /**
+   * @param interpreter The model, whose output tensors must match the anchors.
+   * @param inputSize The size of image input
+   * @param anchors The model's anchors, see {@link SsdAnchors}.
+   */
+  public SsdAnchorDecoder(
+      final Interpreter interpreter,
+      final int inputSize,
+      final float[] anchors,
+      final Options options) {
+    this(
+        inputSize,
+        1,
+        anchors,
+        options,
+        readFormats(interpreter),
+        findBoxIndex(interpreter),
+        numClasses(interpreter));
+    final int anchorsInModel = interpreter.getOutputTensor(boxIndex).shape()[1];
+    if (anchorsInModel != numAnchors) {
+      throw new IllegalArgumentException(
+          "Model has " + anchorsInModel + " anchors, but " + numAnchors + " were given");
+    }
+  }
+
+  // Package private so that decoding can be benchmarked without a model.
+  SsdAnchorDecoder(
+      final int inputSize,
+      final int batchSize,
+      final float[] anchors,
+      final Options options,
+      final OutputTensor.Format[] formats,
+      final int boxIndex,
+      final int numClasses) {
+    super(inputSize, batchSize, formats);
+    this.anchors = anchors;
+    this.numAnchors = anchors.length / 4;
+    this.numClasses = numClasses;
+    this.boxIndex = boxIndex;
+    this.classIndex = 1 - boxIndex;
+    this.options = options;
+    boxEncodings = bindOutput(boxIndex, batchSize * numAnchors * 4);
+    classPredictions = bindOutput(classIndex, batchSize * numAnchors * numClasses);
+    if (classPredictions.isQuantized()) {
+      scores = null;
+      quantizedScores = new byte[numAnchors * numClasses];
+    } else {
+      scores = new float[numAnchors * numClasses];
+      quantizedScores = null;
+    }
+    final int initialCandidates = options.classAgnostic ? numAnchors : options.maxCandidates;
+    candidateKeys = new long[initialCandidates];
+    candidateAnchors = new int[initialCandidates];
+    candidateClasses = new int[initialCandidates];
+  }
+
+  // The box encodings are the output whose last dimension is 4.
+  private static int findBoxIndex(final Interpreter interpreter) {
+    if (interpreter.getOutputTensorCount() != 2) {
+      throw new IllegalArgumentException(
+          "Expected box encodings and class scores, got "
+              + interpreter.getOutputTensorCount()
+              + " outputs");
+    }
+    final int[] shape = interpreter.getOutputTensor(0).shape();
+    return shape[shape.length - 1] == 4 ? 0 : 1;
+  }
+
+  private static int numClasses(final Interpreter interpreter) {
+    final int[] shape = interpreter.getOutputTensor(1 - findBoxIndex(interpreter)).shape();
+    return shape[shape.length - 1];
+  }
+
+  @Override
+  public int getMaxDetections() {
+    return options.maxDetections;
+  }
+
+  @Override
+  public void decode(final int image, final DetectionQuery query, final DetectionBatch results) {
+    Trace.beginSection("collectCandidates");
+    final int offset = image * numAnchors * numClasses;
+    final int numCandidates;
+    if (quantizedScores != null) {
+      classPredictions.copyTo(offset, quantizedScores);
+      numCandidates = collectQuantizedCandidates(query);
+    } else {
+      classPredictions.copyTo(offset, scores);
+      numCandidates = collectCandidates(query);
+    }
+    Trace.endSection();
+
+    Trace.beginSection("nms");
+    Arrays.sort(candidateKeys, 0, numCandidates);
+    final int maxResults = Math.min(query.getMaxResults(), options.maxDetections);
+    final int last = Math.max(0, numCandidates - options.maxCandidates);
+    results.clear();
+    for (int k = numCandidates - 1; k >= last && results.getCount() < maxResults; --k) {
+      final long key = candidateKeys[k];
+      final int candidate = (int) key;
+      final int classId = candidateClasses[candidate];
+      decodeBox(image, candidateAnchors[candidate]);
+      if (!isSuppressed(results, classId)) {
+        results.add(left, top, right, bottom, classId, Float.intBitsToFloat((int) (key >>> 32)));
+      }
+    }
+    Trace.endSection();
+  }
+
+  // Fills the candidate arrays with the anchor and class pairs the query accepts that score at least
+  // the floor, and returns how many there are.
+  private int collectCandidates(final DetectionQuery query) {
+    final float minScore = Math.max(options.minScore, query.getMinimumScore());
+    int count = 0;
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int row = anchor * numClasses;
+      if (options.classAgnostic) {
+        int bestClass = -1;
+        float bestScore = -1.0f;
+        for (int classId = 1; classId < numClasses; ++classId) {
+          final float score = scores[row + classId];
+          if (score > bestScore && score >= minScore && query.accepts(classId, score)) {
+            bestClass = classId;
+            bestScore = score;
+          }
+        }
+        if (bestClass >= 0) {
+          count = addCandidate(count, anchor, bestClass, bestScore);
+        }
+      } else {
+        for (int classId = 1; classId < numClasses; ++classId) {
+          final float score = scores[row + classId];
+          if (score >= minScore && query.accepts(classId, score)) {
+            count = addCandidate(count, anchor, classId, score);
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  // As collectCandidates(), comparing the scores as they are stored with the quantized threshold
+  // first.
+  private int collectQuantizedCandidates(final DetectionQuery query) {
+    final OutputTensor tensor = classPredictions;
+    final int threshold =
+        tensor.quantizeThreshold(Math.max(options.minScore, query.getMinimumScore()));
+    int count = 0;
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int row = anchor * numClasses;
+      if (options.classAgnostic) {
+        int bestClass = -1;
+        int bestValue = threshold - 1;
+        for (int classId = 1; classId < numClasses; ++classId) {
+          final int value = tensor.toQuantized(quantizedScores[row + classId]);
+          if (value > bestValue && query.accepts(classId, tensor.dequantize(value))) {
+            bestClass = classId;
+            bestValue = value;
+          }
+        }
+        if (bestClass >= 0) {
+          count = addCandidate(count, anchor, bestClass, tensor.dequantize(bestValue));
+        }
+      } else {
+        for (int classId = 1; classId < numClasses; ++classId) {
+          final int value = tensor.toQuantized(quantizedScores[row + classId]);
+          if (value >= threshold) {
+            final float score = tensor.dequantize(value);
+            if (query.accepts(classId, score)) {
+              count = addCandidate(count, anchor, classId, score);
+            }
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  private int addCandidate(
+      final int count, final int anchor, final int classId, final float score) {
+    // Negative scores, which the floor normally keeps out, would sort out of order.
+    if (!(score >= 0.0f)) {
+      return count;
+    }
+    if (count == candidateKeys.length) {
+      final int capacity = Math.max(16, count * 2);
+      candidateKeys = Arrays.copyOf(candidateKeys, capacity);
+      candidateAnchors = Arrays.copyOf(candidateAnchors, capacity);
+      candidateClasses = Arrays.copyOf(candidateClasses, capacity);
+    }
+    // The bits of non-negative floats sort as their values do.
+    final int scoreBits = Float.floatToIntBits(score);
+    candidateKeys[count] = ((long) scoreBits << 32) | count;
+    candidateAnchors[count] = anchor;
+    candidateClasses[count] = classId;
+    return count + 1;
+  }
+
+  // Decodes the box of an anchor into left, top, right and bottom.
+  private void decodeBox(final int image, final int anchor) {
+    final int b = (image * numAnchors + anchor) * 4;
+    final int a = anchor * 4;
+    final float anchorHeight = anchors[a + 2];
+    final float anchorWidth = anchors[a + 3];
+    final float yCenter = boxEncodings.get(b) / Y_SCALE * anchorHeight + anchors[a];
+    final float xCenter = boxEncodings.get(b + 1) / X_SCALE * anchorWidth + anchors[a + 1];
+    final float halfHeight = (float) Math.exp(boxEncodings.get(b + 2) / H_SCALE) * anchorHeight / 2;
+    final float halfWidth = (float) Math.exp(boxEncodings.get(b + 3) / W_SCALE) * anchorWidth / 2;
+    left = (xCenter - halfWidth) * inputSize;
+    top = (yCenter - halfHeight) * inputSize;
+    right = (xCenter + halfWidth) * inputSize;
+    bottom = (yCenter + halfHeight) * inputSize;
+  }
+
+  // Whether the box decoded last overlaps a kept detection, of the same class unless suppression
+  // is class agnostic, by more than the threshold.
+  private boolean isSuppressed(final DetectionBatch kept, final int classId) {
+    final float area = (right - left) * (bottom - top);
+    for (int i = 0; i < kept.getCount(); ++i) {
+      if (!options.classAgnostic && kept.getClassId(i) != classId) {
+        continue;
+      }
+      final float intersectionWidth =
+          Math.min(right, kept.getRight(i)) - Math.max(left, kept.getLeft(i));
+      final float intersectionHeight =
+          Math.min(bottom, kept.getBottom(i)) - Math.max(top, kept.getTop(i));
+      if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+        continue;
+      }
+      final float intersection = intersectionWidth * intersectionHeight;
+      final float union = area + kept.getWidth(i) * kept.getHeight(i) - intersection;
+      if (intersection > options.iouThreshold * union) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public OutputDecoder withBatchSize(final int batchSize) {
+    return new SsdAnchorDecoder(
+        inputSize, batchSize, anchors, options, formats, boxIndex, numClasses);
+  }
+}
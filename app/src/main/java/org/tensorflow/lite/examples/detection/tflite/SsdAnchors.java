@@ -0,0 +1,111 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * Generates the anchor boxes of SSD models the way the ssd_anchor_generator of the Tensorflow
+ * Object Detection API does. Anchor i is stored at [4 * i] to [4 * i + 3] as y center, x center,
+ * height and width, normalized to the input size.
+ */
+public final class SsdAnchors {
+  // Defaults of ssd_mobilenet_v1 pipeline configs.
+  private static final int[] MOBILENET_V1_STRIDES = {16, 32, 64, 128, 256, 512};
+  private static final float MIN_SCALE = 0.2f;
+  private static final float MAX_SCALE = 0.95f;
+  private static final float[] ASPECT_RATIOS = {1.0f, 2.0f, 0.5f, 3.0f, 0.3333f};
+
+  private SsdAnchors() {}
+
+  /** Returns the anchors of SSD MobileNet V1 for a square input, 1917 of them at 300px. */
+  public static float[] mobileNetV1(final int inputSize) {
+    final int[] featureMapSizes = new int[MOBILENET_V1_STRIDES.length];
+    for (int i = 0; i < featureMapSizes.length; ++i) {
+      featureMapSizes[i] = (inputSize + MOBILENET_V1_STRIDES[i] - 1) / MOBILENET_V1_STRIDES[i];
+    }
+    return generate(featureMapSizes, MIN_SCALE, MAX_SCALE, ASPECT_RATIOS, true);
+  }
+
+  /**
+   * Returns anchors for square feature maps, from the finest to the coarsest, with scales spaced
+   * evenly from minScale to maxScale across them.
+   *
+   * @param aspectRatios Width to height ratios of the boxes in each cell. Every layer also gets a
+   *     square box of the scale between its own and the next layer's.
+   * @param reduceBoxesInLowestLayer Use only three boxes per cell in the first layer, as SSD does.
+   */
+  public static float[] generate(
+      final int[] featureMapSizes,
+      final float minScale,
+      final float maxScale,
+      final float[] aspectRatios,
+      final boolean reduceBoxesInLowestLayer) {
+    final int numLayers = featureMapSizes.length;
+    final float[] scales = new float[numLayers + 1];
+    for (int i = 0; i < numLayers; ++i) {
+      scales[i] =
+          numLayers == 1 ? minScale : minScale + (maxScale - minScale) * i / (numLayers - 1);
+    }
+    scales[numLayers] = 1.0f;
+
+    int numAnchors = 0;
+    for (int layer = 0; layer < numLayers; ++layer) {
+      final int size = featureMapSizes[layer];
+      numAnchors += size * size * boxesPerCell(layer, aspectRatios, reduceBoxesInLowestLayer);
+    }
+    final float[] anchors = new float[numAnchors * 4];
+
+    int a = 0;
+    for (int layer = 0; layer < numLayers; ++layer) {
+      final int boxes = boxesPerCell(layer, aspectRatios, reduceBoxesInLowestLayer);
+      final float[] boxScales = new float[boxes];
+      final float[] boxRatios = new float[boxes];
+      if (layer == 0 && reduceBoxesInLowestLayer) {
+        boxScales[0] = 0.1f;
+        boxRatios[0] = 1.0f;
+        boxScales[1] = scales[0];
+        boxRatios[1] = 2.0f;
+        boxScales[2] = scales[0];
+        boxRatios[2] = 0.5f;
+      } else {
+        for (int i = 0; i < aspectRatios.length; ++i) {
+          boxScales[i] = scales[layer];
+          boxRatios[i] = aspectRatios[i];
+        }
+        boxScales[aspectRatios.length] = (float) Math.sqrt(scales[layer] * scales[layer + 1]);
+        boxRatios[aspectRatios.length] = 1.0f;
+      }
+
+      final int size = featureMapSizes[layer];
+      for (int y = 0; y < size; ++y) {
+        for (int x = 0; x < size; ++x) {
+          for (int box = 0; box < boxes; ++box) {
+            final float ratio = (float) Math.sqrt(boxRatios[box]);
+            anchors[a++] = (y + 0.5f) / size;
+            anchors[a++] = (x + 0.5f) / size;
+            anchors[a++] = boxScales[box] / ratio;
+            anchors[a++] = boxScales[box] * ratio;
+          }
+        }
+      }
+    }
+    return anchors;
+  }
+
+  private static int boxesPerCell(
+      final int layer, final float[] aspectRatios, final boolean reduceBoxesInLowestLayer) {
+    return layer == 0 && reduceBoxesInLowestLayer ? 3 : aspectRatios.length + 1;
+  }
+}
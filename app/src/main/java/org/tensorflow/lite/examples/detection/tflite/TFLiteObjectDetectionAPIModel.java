@@ -18,7 +18,7 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
+import android.os.SystemClock;
 import android.os.Trace;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -27,12 +27,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.detection.env.Logger;
@@ -46,9 +45,13 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
 
   // Only return this many results.
   private static final int NUM_DETECTIONS = 10;
+  // Largest number of images run in a single invocation by recognizeImages.
+  private static final int MAX_BATCH_SIZE = 8;
   // Float model
   private static final float IMAGE_MEAN = 128.0f;
   private static final float IMAGE_STD = 128.0f;
+  private static final float[] DEFAULT_MEAN = {IMAGE_MEAN, IMAGE_MEAN, IMAGE_MEAN};
+  private static final float[] DEFAULT_STD = {IMAGE_STD, IMAGE_STD, IMAGE_STD};
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;
   private boolean isModelQuantized;
@@ -57,22 +60,37 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
+  // Staging area for the quantized input, handed to imgData with a single bulk put.
+  private byte[] rgbBytes;
+  // Float model: normalized value of each 8-bit value per channel, and the staging area that is
+  // written to imgData through floatData in bulk.
+  private float[] redTable;
+  private float[] greenTable;
+  private float[] blueTable;
+  private float[] floatValues;
+  private FloatBuffer floatData;
+  // Owns the buffers the output tensors are copied into, and turns them into detections.
+  private OutputDecoder decoder;
+  private final Object[] inputArray = new Object[1];
+
+  // Decoded into by the List based API, which then converts the detections into Recognitions.
+  private final DetectionBatch detections = new DetectionBatch(NUM_DETECTIONS);
+  // Applied while decoding. Accepts everything until setQuery is called.
+  private final DetectionQuery query = new DetectionQuery();
 
   private ByteBuffer imgData;
 
+  // Batched runs, for models whose batch dimension can be resized. The interpreter's input is
+  // currently sized for batchSize images, and the batch buffers are reallocated when that changes.
+  private boolean supportsBatch;
+  private int batchSize = 1;
+  private ByteBuffer batchData;
+  private FloatBuffer batchFloatData;
+  private OutputDecoder batchDecoder;
+
   private Interpreter tfLite;
+  // Null if the model was created without a warm-up.
+  private WarmUp warmUp;
 
   private TFLiteObjectDetectionAPIModel() {}
 
@@ -87,6 +105,50 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
+  /**
+   * Optional settings for {@link #create(AssetManager, String, String, int, boolean, Options)}.
+   */
+  public static class Options {
+    private float[] imageMean = DEFAULT_MEAN;
+    private float[] imageStd = DEFAULT_STD;
+    private SsdAnchorDecoder.Options ssdOptions = SsdAnchorDecoder.Options.DEFAULT;
+    private WarmUp warmUp;
+
+    /**
+     * Normalizes the input of float models with the given per channel mean and standard deviation.
+     * Ignored for quantized models.
+     *
+     * @param imageMean Mean of the R, G and B channels.
+     * @param imageStd Standard deviation of the R, G and B channels.
+     */
+    public Options setNormalization(final float[] imageMean, final float[] imageStd) {
+      if (imageMean.length != 3 || imageStd.length != 3) {
+        throw new IllegalArgumentException("Expected a mean and standard deviation per channel");
+      }
+      this.imageMean = imageMean.clone();
+      this.imageStd = imageStd.clone();
+      return this;
+    }
+
+    /** Sets the suppression settings to use if the model outputs raw SSD boxes. */
+    public Options setSsdOptions(final SsdAnchorDecoder.Options ssdOptions) {
+      this.ssdOptions = ssdOptions;
+      return this;
+    }
+
+    /**
+     * Warms the model up on a separate thread. Everything that uses the interpreter, including
+     * recognition, waits for the warm-up, so callers that must not block should check {@link
+     * WarmUp#isDone()} first.
+     *
+     * @param warmUp The warm-up to run, which is signalled once it is done. Null to skip it.
+     */
+    public Options setWarmUp(final WarmUp warmUp) {
+      this.warmUp = warmUp;
+      return this;
+    }
+  }
+
   /**
    * Initializes a native TensorFlow session for classifying images.
    *
@@ -103,6 +165,39 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
+    return create(
+        assetManager, modelFilename, labelFilename, inputSize, isQuantized, new Options());
+  }
+
+  /**
+   * As {@link #create(AssetManager, String, String, int, boolean)}, with the given settings.
+   *
+   * @param options Read before this returns, so they may be changed and reused afterwards.
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final Options options)
+      throws IOException {
+    final TFLiteObjectDetectionAPIModel d =
+        createModel(assetManager, modelFilename, labelFilename, inputSize, isQuantized, options);
+    if (options.warmUp != null) {
+      d.startWarmUp(options.warmUp);
+    }
+    return d;
+  }
+
+  private static TFLiteObjectDetectionAPIModel createModel(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final Options options)
+      throws IOException {
     final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
 
     InputStream labelsInput = null;
@@ -112,7 +207,6 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     br = new BufferedReader(new InputStreamReader(labelsInput));
     String line;
     while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
       d.labels.add(line);
     }
     br.close();
@@ -136,86 +230,248 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
     d.imgData.order(ByteOrder.nativeOrder());
     d.intValues = new int[d.inputSize * d.inputSize];
+    if (isQuantized) {
+      d.rgbBytes = new byte[d.inputSize * d.inputSize * 3];
+    } else {
+      d.redTable = normalizationTable(options.imageMean[0], options.imageStd[0]);
+      d.greenTable = normalizationTable(options.imageMean[1], options.imageStd[1]);
+      d.blueTable = normalizationTable(options.imageMean[2], options.imageStd[2]);
+      d.floatValues = new float[d.inputSize * d.inputSize * 3];
+      d.floatData = d.imgData.asFloatBuffer();
+    }
 
     d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    // Models with the TFLite_Detection_PostProcess op have four outputs, raw SSD models two.
+    if (d.tfLite.getOutputTensorCount() == 2) {
+      d.decoder =
+          new SsdAnchorDecoder(
+              d.tfLite,
+              inputSize,
+              SsdAnchors.mobileNetV1(inputSize),
+              options.ssdOptions);
+    } else {
+      d.decoder = new PostProcessedDecoder(d.tfLite, inputSize, NUM_DETECTIONS);
+    }
+    // A batch dimension of -1 in the signature means the model can be resized to run batches.
+    final int[] inputShape = d.tfLite.getInputTensor(0).shapeSignature();
+    d.supportsBatch = inputShape != null && inputShape.length == 4 && inputShape[0] == -1;
     return d;
   }
 
+  private void startWarmUp(final WarmUp warmUp) {
+    this.warmUp = warmUp;
+    new Thread("warm-up") {
+      @Override
+      public void run() {
+        final long startTime = SystemClock.uptimeMillis();
+        try {
+          final AutoTuner.Configuration configuration = warmUp.getConfiguration();
+          if (configuration != null) {
+            tfLite.setNumThreads(configuration.numThreads);
+            tfLite.setUseNNAPI(configuration.useNNAPI);
+          }
+          // The input is still all zeros.
+          for (int i = 0; i < warmUp.getNumRuns(); ++i) {
+            imgData.rewind();
+            runInference(imgData, detections);
+          }
+        } catch (final RuntimeException e) {
+          LOGGER.e(e, "Warm-up failed");
+        } finally {
+          final long elapsedMs = SystemClock.uptimeMillis() - startTime;
+          LOGGER.i("Warm-up of %d runs took %dms", warmUp.getNumRuns(), elapsedMs);
+          warmUp.finish(elapsedMs);
+        }
+      }
+    }.start();
+  }
+
+  // Called before anything that uses the interpreter, which the warm-up may still be running on.
+  private void awaitWarmUp() {
+    if (warmUp != null) {
+      warmUp.awaitUninterruptibly();
+    }
+  }
+
+  static float[] normalizationTable(final float mean, final float std) {
+    final float[] table = new float[256];
+    for (int i = 0; i < 256; ++i) {
+      table[i] = (i - mean) / std;
+    }
+    return table;
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    detect(bitmap, detections);
+    final List<Recognition> recognitions = detections.toRecognitions();
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
 
+  @Override
+  public void detect(final Bitmap bitmap, final DetectionBatch results) {
+    awaitWarmUp();
     Trace.beginSection("preprocessBitmap");
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
     imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
-      }
+    if (floatData != null) {
+      floatData.rewind();
     }
+    preprocess(bitmap, imgData, floatData);
     Trace.endSection(); // preprocessBitmap
 
+    runInference(imgData, results);
+  }
+
+  // Appends the input for one bitmap at the position of byteData, or of floatData for float
+  // models.
+  private void preprocess(
+      final Bitmap bitmap,
+      final ByteBuffer byteData,
+      final FloatBuffer floatData) {
+    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    if (isModelQuantized) {
+      packQuantized(intValues, rgbBytes);
+      byteData.put(rgbBytes);
+    } else {
+      packFloat(intValues, redTable, greenTable, blueTable, floatValues);
+      floatData.put(floatValues);
+    }
+  }
+
+  // Quantized model: one byte per channel, RGB order. Package private, as are packFloat and
+  // normalizationTable, for the packing benchmark.
+  static void packQuantized(final int[] pixels, final byte[] output) {
+    int p = 0;
+    for (final int pixelValue : pixels) {
+      output[p++] = (byte) (pixelValue >> 16);
+      output[p++] = (byte) (pixelValue >> 8);
+      output[p++] = (byte) pixelValue;
+    }
+  }
+
+  // Float model: one normalized float per channel, RGB order, looked up in the channel's table.
+  static void packFloat(
+      final int[] pixels,
+      final float[] red,
+      final float[] green,
+      final float[] blue,
+      final float[] output) {
+    int p = 0;
+    for (final int pixelValue : pixels) {
+      output[p++] = red[(pixelValue >> 16) & 0xFF];
+      output[p++] = green[(pixelValue >> 8) & 0xFF];
+      output[p++] = blue[pixelValue & 0xFF];
+    }
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final ByteBuffer inputData) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImage");
+    detect(inputData, detections);
+    final List<Recognition> recognitions = detections.toRecognitions();
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  @Override
+  public void detect(final ByteBuffer inputData, final DetectionBatch results) {
+    awaitWarmUp();
+    runInference(inputData, results);
+  }
+
+  /** Runs the model and decodes its output into results. Once warmed up, this allocates nothing. */
+  private void runInference(final ByteBuffer inputData, final DetectionBatch results) {
     // Copy the input data into TensorFlow.
     Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    resizeBatch(1);
+    inputArray[0] = inputData;
+    decoder.rewind();
     Trace.endSection();
 
     // Run the inference call.
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    tfLite.runForMultipleInputsOutputs(inputArray, decoder.getOutputs());
     Trace.endSection();
 
     // Show the best detections.
     // after scaling them back to the input size.
-    final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
-    for (int i = 0; i < NUM_DETECTIONS; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
-      // SSD Mobilenet V1 Model assumes class 0 is background class
-      // in label file and class labels start from 1 to number_of_classes+1,
-      // while outputClasses correspond to class index from 0 to number_of_classes
-      int labelOffset = 1;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
+    Trace.beginSection("decode");
+    decoder.decode(0, query, results);
+    results.setLabels(labels);
+    Trace.endSection();
+  }
+
+  /**
+   * Runs up to MAX_BATCH_SIZE images per invocation if the model's batch dimension can be resized,
+   * and falls back to one invocation per image otherwise.
+   */
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    awaitWarmUp();
+    Trace.beginSection("recognizeImages");
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    if (!supportsBatch || bitmaps.size() == 1) {
+      for (final Bitmap bitmap : bitmaps) {
+        results.add(recognizeImage(bitmap));
+      }
+    } else {
+      for (int start = 0; start < bitmaps.size(); start += MAX_BATCH_SIZE) {
+        runBatch(bitmaps.subList(start, Math.min(bitmaps.size(), start + MAX_BATCH_SIZE)), results);
+      }
     }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
+    Trace.endSection(); // "recognizeImages"
+    return results;
+  }
+
+  private void runBatch(final List<Bitmap> bitmaps, final List<List<Recognition>> results) {
+    final int size = bitmaps.size();
+    resizeBatch(size);
+    if (batchData == null || batchData.capacity() != size * imgData.capacity()) {
+      batchData = ByteBuffer.allocateDirect(size * imgData.capacity());
+      batchData.order(ByteOrder.nativeOrder());
+      batchFloatData = batchData.asFloatBuffer();
+      batchDecoder = decoder.withBatchSize(size);
+    }
+
+    Trace.beginSection("preprocessBitmaps");
+    batchData.rewind();
+    batchFloatData.rewind();
+    for (final Bitmap bitmap : bitmaps) {
+      preprocess(bitmap, batchData, batchFloatData);
+    }
+    batchData.rewind();
+    batchDecoder.rewind();
+    Trace.endSection();
+
+    Trace.beginSection("run");
+    inputArray[0] = batchData;
+    tfLite.runForMultipleInputsOutputs(inputArray, batchDecoder.getOutputs());
+    Trace.endSection();
+
+    for (int image = 0; image < size; ++image) {
+      batchDecoder.decode(image, query, detections);
+      detections.setLabels(labels);
+      results.add(detections.toRecognitions());
+    }
+  }
+
+  // Resizes the interpreter's input to a batch of the given number of images.
+  private void resizeBatch(final int size) {
+    if (size != batchSize) {
+      tfLite.resizeInput(0, new int[] {size, inputSize, inputSize, 3});
+      batchSize = size;
+    }
+  }
+
+  @Override
+  public void setQuery(final DetectionQuery query) {
+    this.query.set(query);
   }
 
   @Override
@@ -227,14 +483,22 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    awaitWarmUp();
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+  }
 
   public void setNumThreads(int num_threads) {
+    awaitWarmUp();
     if (tfLite != null) tfLite.setNumThreads(num_threads);
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
+    awaitWarmUp();
     if (tfLite != null) tfLite.setUseNNAPI(isChecked);
   }
 }
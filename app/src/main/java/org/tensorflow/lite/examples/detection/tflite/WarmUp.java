@@ -0,0 +1,92 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests dummy inferences right after a model is created, and signals when they are done. The
+ * first inferences of an interpreter are much slower than later ones, as memory is allocated and
+ * delegates are prepared, so this moves that cost off the first live frame.
+ */
+public class WarmUp {
+  private final int numRuns;
+  private final AutoTuner.Configuration configuration;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile long elapsedMs = -1;
+
+  /**
+   * @param numRuns Number of inferences to run.
+   * @param configuration Settings to apply before warming up, as changing the delegate afterwards
+   *     would undo part of the warm-up. Null to keep the model's defaults.
+   */
+  public WarmUp(final int numRuns, final AutoTuner.Configuration configuration) {
+    if (numRuns < 1) {
+      throw new IllegalArgumentException("Need at least one run, got " + numRuns);
+    }
+    this.numRuns = numRuns;
+    this.configuration = configuration;
+  }
+
+  public int getNumRuns() {
+    return numRuns;
+  }
+
+  AutoTuner.Configuration getConfiguration() {
+    return configuration;
+  }
+
+  void finish(final long elapsedMs) {
+    this.elapsedMs = elapsedMs;
+    done.countDown();
+  }
+
+  /** Returns whether the model is ready, i.e. the warm-up has finished or failed. */
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  public void await() throws InterruptedException {
+    done.await();
+  }
+
+  public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return done.await(timeout, unit);
+  }
+
+  /** Returns how long the warm-up took, or -1 if it has not finished. */
+  public long getElapsedMs() {
+    return elapsedMs;
+  }
+
+  // Waits for the warm-up, e.g. before using the interpreter it runs on, without giving up on an
+  // interrupt.
+  void awaitUninterruptibly() {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        done.await();
+        break;
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -25,8 +25,8 @@ import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
 import android.text.TextUtils;
-import android.util.Pair;
 import android.util.TypedValue;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -34,6 +34,7 @@ import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.DetectionBatch;
 
 /** A tracker that handles non-max suppression and matches existing objects to new detections. */
 public class MultiBoxTracker {
@@ -56,10 +57,17 @@ public class MultiBoxTracker {
     Color.parseColor("#AA33AA"),
     Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
   private final Logger logger = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  // The tracked objects are taken from a pool, one per color, that is reused from frame to frame.
+  private final TrackedRecognition[] trackedPool = new TrackedRecognition[COLORS.length];
+  private final List<TrackedRecognition> trackedObjects =
+      new ArrayList<TrackedRecognition>(COLORS.length);
+  // The last frame's detections in screen coordinates, for drawDebug().
+  private final DetectionBatch screenDetections = new DetectionBatch(COLORS.length);
+  // Holds the Recognitions passed to trackResults(List, long).
+  private final DetectionBatch recognitionDetections = new DetectionBatch(COLORS.length);
+  private final RectF scratchRect = new RectF();
   private final Paint boxPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
@@ -72,6 +80,9 @@ public class MultiBoxTracker {
     for (final int color : COLORS) {
       availableColors.add(color);
     }
+    for (int i = 0; i < trackedPool.length; ++i) {
+      trackedPool[i] = new TrackedRecognition();
+    }
 
     boxPaint.setColor(Color.RED);
     boxPaint.setStyle(Style.STROKE);
@@ -103,19 +114,44 @@ public class MultiBoxTracker {
     boxPaint.setAlpha(200);
     boxPaint.setStyle(Style.STROKE);
 
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
+    final RectF rect = scratchRect;
+    for (int i = 0; i < screenDetections.getCount(); ++i) {
+      screenDetections.getBox(i, rect);
+      final String score = "" + screenDetections.getScore(i);
       canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+      canvas.drawText(score, rect.left, rect.top, textPaint);
+      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), score);
     }
   }
 
-  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
+  /** Tracks a frame's detections, in frame coordinates. The batch is not kept. */
+  public synchronized void trackResults(final DetectionBatch results, final long timestamp) {
+    logger.i("Processing %d results from %d", results.getCount(), timestamp);
     processResults(results);
   }
 
+  /** As {@link #trackResults(DetectionBatch, long)}, for callers that produce Recognitions. */
+  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
+    recognitionDetections.setRecognitions(results);
+    trackResults(recognitionDetections, timestamp);
+  }
+
+  /**
+   * Stores the union of the currently tracked boxes, in frame coordinates, into region.
+   *
+   * @return false if nothing is being tracked, in which case region is left unchanged.
+   */
+  public synchronized boolean getTrackedRegion(final RectF region) {
+    if (trackedObjects.isEmpty()) {
+      return false;
+    }
+    region.setEmpty();
+    for (final TrackedRecognition recognition : trackedObjects) {
+      region.union(recognition.location);
+    }
+    return true;
+  }
+
   private Matrix getFrameToCanvasMatrix() {
     return frameToCanvasMatrix;
   }
@@ -154,56 +190,43 @@ public class MultiBoxTracker {
     }
   }
 
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
-
-    screenRects.clear();
-    final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
-
-    for (final Recognition result : results) {
-      if (result.getLocation() == null) {
-        continue;
-      }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
-
-      final RectF detectionScreenRect = new RectF();
-      rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
-
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
-
-      screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
-
-      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
-        continue;
-      }
-
-      rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
+  private void processResults(final DetectionBatch results) {
+    screenDetections.copyFrom(results);
+    final Matrix rgbFrameToScreen = getFrameToCanvasMatrix();
+    if (rgbFrameToScreen != null) {
+      screenDetections.transform(rgbFrameToScreen);
     }
 
-    if (rectsToTrack.isEmpty()) {
+    boolean anyToTrack = false;
+    for (int i = 0; i < results.getCount() && !anyToTrack; ++i) {
+      anyToTrack = isTrackable(results, i);
+    }
+    if (!anyToTrack) {
       logger.v("Nothing to track, aborting.");
       return;
     }
 
     trackedObjects.clear();
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
+    for (int i = 0; i < results.getCount() && trackedObjects.size() < COLORS.length; ++i) {
+      if (!isTrackable(results, i)) {
+        logger.w("Degenerate rectangle! %.0fx%.0f", results.getWidth(i), results.getHeight(i));
+        continue;
+      }
+      final TrackedRecognition trackedRecognition = trackedPool[trackedObjects.size()];
+      trackedRecognition.detectionConfidence = results.getScore(i);
+      results.getBox(i, trackedRecognition.location);
+      trackedRecognition.title = results.getLabel(i);
       trackedRecognition.color = COLORS[trackedObjects.size()];
       trackedObjects.add(trackedRecognition);
-
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
-      }
     }
   }
 
+  private static boolean isTrackable(final DetectionBatch results, final int i) {
+    return results.getWidth(i) >= MIN_SIZE && results.getHeight(i) >= MIN_SIZE;
+  }
+
   private static class TrackedRecognition {
-    RectF location;
+    final RectF location = new RectF();
     float detectionConfidence;
     int color;
     String title;
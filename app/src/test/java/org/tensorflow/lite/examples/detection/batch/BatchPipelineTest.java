@@ -0,0 +1,183 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.ClassifierPool;
+import org.tensorflow.lite.examples.detection.tflite.FakeClassifier;
+
+/** Drives the pipeline as BatchDetectionService does, with fake classifiers in the pool. */
+public class BatchPipelineTest {
+  private static final int NUM_SOURCES = 50;
+
+  private ClassifierPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    pool = new ClassifierPool(FakeClassifier::new, 2, 1);
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  // Collects the outcome of every source, checking that the sink is called from one thread only.
+  private static class Collector implements BatchPipeline.Sink<Integer, String> {
+    final Map<Integer, String> results = new HashMap<Integer, String>();
+    final Map<Integer, Exception> errors = new HashMap<Integer, Exception>();
+    final Thread thread = Thread.currentThread();
+
+    @Override
+    public void onResult(final Integer source, final String result) {
+      assertEquals(thread, Thread.currentThread());
+      results.put(source, result);
+    }
+
+    @Override
+    public void onError(final Integer source, final Exception error) {
+      assertEquals(thread, Thread.currentThread());
+      errors.put(source, error);
+    }
+  }
+
+  private BatchPipeline<Integer, ByteBuffer, String> newPipeline(
+      final BatchPipeline.Preparer<Integer, ByteBuffer> preparer) {
+    return new BatchPipeline<>(
+        preparer, input -> pool.recognizeImage(input).get(0).getTitle(), 2, 2, 3);
+  }
+
+  private static List<Integer> sources(final int count) {
+    final List<Integer> sources = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; ++i) {
+      sources.add(i);
+    }
+    return sources;
+  }
+
+  @Test
+  public void deliversEverySource() throws Exception {
+    final Collector collector = new Collector();
+    final BatchPipeline.Stats stats =
+        newPipeline(FakeClassifier::input)
+            .run(sources(NUM_SOURCES).iterator(), collector);
+
+    assertEquals(NUM_SOURCES, stats.succeeded);
+    assertEquals(0, stats.failed);
+    assertEquals(NUM_SOURCES, collector.results.size());
+    for (int i = 0; i < NUM_SOURCES; ++i) {
+      assertEquals(Integer.toString(i), collector.results.get(i));
+    }
+  }
+
+  @Test
+  public void reportsFailedSources() throws Exception {
+    final Collector collector = new Collector();
+    final BatchPipeline.Stats stats =
+        newPipeline(
+                source -> {
+                  if (source % 5 == 0) {
+                    throw new IOException("Cannot decode " + source);
+                  }
+                  return FakeClassifier.input(source);
+                })
+            .run(sources(NUM_SOURCES).iterator(), collector);
+
+    assertEquals(NUM_SOURCES / 5, stats.failed);
+    assertEquals(NUM_SOURCES - NUM_SOURCES / 5, stats.succeeded);
+    for (final Map.Entry<Integer, Exception> error : collector.errors.entrySet()) {
+      assertEquals(0, error.getKey() % 5);
+      assertTrue(error.getValue() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void rethrowsErrorOfPreparerWithoutHanging() throws Exception {
+    final Collector collector = new Collector();
+    try {
+      newPipeline(
+              source -> {
+                if (source == 7) {
+                  throw new OutOfMemoryError("Fake");
+                }
+                return FakeClassifier.input(source);
+              })
+          .run(sources(NUM_SOURCES).iterator(), collector);
+      fail("Expected the Error to be rethrown");
+    } catch (final OutOfMemoryError e) {
+      assertEquals("Fake", e.getMessage());
+    }
+    // The other preparer drained the remaining sources.
+    assertEquals(NUM_SOURCES - 1, collector.results.size());
+  }
+
+  @Test
+  public void rethrowsErrorOfEveryPreparerWithoutHanging() throws Exception {
+    try {
+      newPipeline(
+              source -> {
+                throw new StackOverflowError();
+              })
+          .run(sources(NUM_SOURCES).iterator(), new Collector());
+      fail("Expected the Error to be rethrown");
+    } catch (final StackOverflowError e) {
+      // Expected.
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rethrowsFailureOfSink() throws Exception {
+    newPipeline(FakeClassifier::input)
+        .run(
+            sources(NUM_SOURCES).iterator(),
+            new BatchPipeline.Sink<Integer, String>() {
+              @Override
+              public void onResult(final Integer source, final String result)
+                  throws IOException {
+                throw new IOException("Disk full");
+              }
+
+              @Override
+              public void onError(final Integer source, final Exception error) {}
+            });
+  }
+
+  @Test
+  public void formatsStatsIndependentlyOfLocale() {
+    final Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(Locale.GERMANY);
+    try {
+      assertEquals(
+          "3 succeeded, 1 failed in 2000ms (2.0 images/s)",
+          new BatchPipeline.Stats(3, 1, 2000).toString());
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+}
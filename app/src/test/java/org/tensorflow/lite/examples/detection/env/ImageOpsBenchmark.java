@@ -0,0 +1,114 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of each ImageOps operation on a preview sized frame, scaling to the 300x300 model input.
+ * The Matrix and Canvas path it replaces only runs on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageOpsBenchmark {
+  private static final int DST_SIZE = 300;
+
+  @Param({"640x480", "1280x720"})
+  private String size;
+
+  private int width;
+  private int height;
+  private int[] argb;
+  private byte[] gray;
+  private int[] argbOut;
+  private byte[] grayOut;
+  private int[] rotated;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    final Random random = new Random(0);
+    argb = new int[width * height];
+    for (int i = 0; i < argb.length; ++i) {
+      argb[i] = random.nextInt();
+    }
+    gray = new byte[width * height];
+    random.nextBytes(gray);
+    argbOut = new int[DST_SIZE * DST_SIZE];
+    grayOut = new byte[DST_SIZE * DST_SIZE];
+    rotated = new int[width * height];
+  }
+
+  @Benchmark
+  public int[] resizeNearestArgb() {
+    ImageOps.resizeNearest(argb, width, height, argbOut, DST_SIZE, DST_SIZE);
+    return argbOut;
+  }
+
+  @Benchmark
+  public int[] resizeBilinearArgb() {
+    ImageOps.resizeBilinear(argb, width, height, argbOut, DST_SIZE, DST_SIZE);
+    return argbOut;
+  }
+
+  @Benchmark
+  public int[] resizeAreaArgb() {
+    ImageOps.resizeArea(argb, width, height, argbOut, DST_SIZE, DST_SIZE);
+    return argbOut;
+  }
+
+  @Benchmark
+  public byte[] resizeBilinearGray() {
+    ImageOps.resizeBilinear(gray, width, height, grayOut, DST_SIZE, DST_SIZE);
+    return grayOut;
+  }
+
+  @Benchmark
+  public byte[] resizeAreaGray() {
+    ImageOps.resizeArea(gray, width, height, grayOut, DST_SIZE, DST_SIZE);
+    return grayOut;
+  }
+
+  @Benchmark
+  public int[] rotate90Argb() {
+    ImageOps.rotate(argb, width, height, 90, rotated);
+    return rotated;
+  }
+
+  @Benchmark
+  public int[] flipHorizontalArgb() {
+    ImageOps.flip(argb, width, height, true, rotated);
+    return rotated;
+  }
+}
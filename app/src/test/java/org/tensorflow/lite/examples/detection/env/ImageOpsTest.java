@@ -0,0 +1,287 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks ImageOps against a floating point model of Canvas.drawBitmap with a scaling Matrix, which
+ * maps each destination pixel center into the source. The comparison with the real Matrix output
+ * runs on a device, see ImageOpsGoldenTest in androidTest.
+ */
+public class ImageOpsTest {
+  private static final int[][] RESIZES = {
+    {640, 480, 300, 300}, {64, 48, 32, 24}, {50, 30, 70, 45}, {7, 5, 3, 2}
+  };
+
+  @Test
+  public void resizeNearestSamplesThePixelUnderEachCenter() {
+    for (final int[] resize : RESIZES) {
+      final int srcWidth = resize[0];
+      final int srcHeight = resize[1];
+      final int dstWidth = resize[2];
+      final int dstHeight = resize[3];
+      final int[] src = randomArgb(srcWidth * srcHeight);
+      final int[] dst = new int[dstWidth * dstHeight];
+      ImageOps.resizeNearest(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+
+      for (int y = 0; y < dstHeight; ++y) {
+        final int sy = (int) ((y + 0.5) * srcHeight / dstHeight);
+        for (int x = 0; x < dstWidth; ++x) {
+          final int sx = (int) ((x + 0.5) * srcWidth / dstWidth);
+          assertEquals(src[sy * srcWidth + sx], dst[y * dstWidth + x]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void resizeBilinearMatchesFloatingPointReference() {
+    for (final int[] resize : RESIZES) {
+      final int srcWidth = resize[0];
+      final int srcHeight = resize[1];
+      final int dstWidth = resize[2];
+      final int dstHeight = resize[3];
+      final int[] src = randomArgb(srcWidth * srcHeight);
+      final int[] dst = new int[dstWidth * dstHeight];
+      ImageOps.resizeBilinear(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+
+      for (int y = 0; y < dstHeight; ++y) {
+        for (int x = 0; x < dstWidth; ++x) {
+          for (int shift = 0; shift < 32; shift += 8) {
+            final float expected =
+                bilinear(src, srcWidth, srcHeight, shift, x, y, dstWidth, dstHeight);
+            final int actual = (dst[y * dstWidth + x] >>> shift) & 0xff;
+            // Weights are truncated to 8 bits, and each of the three interpolations rounds.
+            if (Math.abs(actual - expected) > 2.5f) {
+              fail(String.format("(%d, %d) channel %d: %d vs %f", x, y, shift, actual, expected));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void singleChannelResizesMatchArgbResizes() {
+    for (final int[] resize : RESIZES) {
+      final int srcWidth = resize[0];
+      final int srcHeight = resize[1];
+      final int dstWidth = resize[2];
+      final int dstHeight = resize[3];
+      final byte[] gray = randomBytes(srcWidth * srcHeight);
+      final int[] argb = toArgb(gray);
+      final byte[] grayOut = new byte[dstWidth * dstHeight];
+      final int[] argbOut = new int[dstWidth * dstHeight];
+
+      ImageOps.resizeNearest(gray, srcWidth, srcHeight, grayOut, dstWidth, dstHeight);
+      ImageOps.resizeNearest(argb, srcWidth, srcHeight, argbOut, dstWidth, dstHeight);
+      assertArrayEquals(grayOut, blueChannel(argbOut));
+
+      ImageOps.resizeArea(gray, srcWidth, srcHeight, grayOut, dstWidth, dstHeight);
+      ImageOps.resizeArea(argb, srcWidth, srcHeight, argbOut, dstWidth, dstHeight);
+      assertArrayEquals(grayOut, blueChannel(argbOut));
+
+      ImageOps.resizeBilinear(gray, srcWidth, srcHeight, grayOut, dstWidth, dstHeight);
+      ImageOps.resizeBilinear(argb, srcWidth, srcHeight, argbOut, dstWidth, dstHeight);
+      final byte[] fromArgb = blueChannel(argbOut);
+      for (int i = 0; i < grayOut.length; ++i) {
+        assertTrue(Math.abs((grayOut[i] & 0xff) - (fromArgb[i] & 0xff)) <= 1);
+      }
+    }
+  }
+
+  @Test
+  public void resizeBilinearKeepsAConstantImage() {
+    final int[] src = new int[64 * 48];
+    java.util.Arrays.fill(src, 0xff336699);
+    final int[] dst = new int[300 * 300];
+    ImageOps.resizeBilinear(src, 64, 48, dst, 300, 300);
+    for (final int pixel : dst) {
+      assertEquals(0xff336699, pixel);
+    }
+  }
+
+  @Test
+  public void resizeAreaAveragesWholeBlocks() {
+    final int[] src = randomArgb(12 * 8);
+    final int[] dst = new int[4 * 2];
+    ImageOps.resizeArea(src, 12, 8, dst, 4, 2);
+    for (int y = 0; y < 2; ++y) {
+      for (int x = 0; x < 4; ++x) {
+        for (int shift = 0; shift < 32; shift += 8) {
+          int sum = 0;
+          for (int j = 0; j < 4; ++j) {
+            for (int i = 0; i < 3; ++i) {
+              sum += (src[(y * 4 + j) * 12 + x * 3 + i] >>> shift) & 0xff;
+            }
+          }
+          assertEquals(Math.round(sum / 12.0f), (dst[y * 4 + x] >>> shift) & 0xff);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void rotateMovesPixelsClockwise() {
+    // 3x2 source:  0 1 2
+    //              3 4 5
+    final int[] src = {0, 1, 2, 3, 4, 5};
+    final int[] dst = new int[6];
+    ImageOps.rotate(src, 3, 2, 90, dst);
+    assertArrayEquals(new int[] {3, 0, 4, 1, 5, 2}, dst);
+    ImageOps.rotate(src, 3, 2, 180, dst);
+    assertArrayEquals(new int[] {5, 4, 3, 2, 1, 0}, dst);
+    ImageOps.rotate(src, 3, 2, 270, dst);
+    assertArrayEquals(new int[] {2, 5, 1, 4, 0, 3}, dst);
+    ImageOps.rotate(src, 3, 2, -90, dst);
+    assertArrayEquals(new int[] {2, 5, 1, 4, 0, 3}, dst);
+  }
+
+  @Test
+  public void fourQuarterTurnsRestoreTheImage() {
+    final int[] src = randomArgb(7 * 5);
+    final int[] a = new int[src.length];
+    final int[] b = new int[src.length];
+    ImageOps.rotate(src, 7, 5, 90, a);
+    ImageOps.rotate(a, 5, 7, 90, b);
+    ImageOps.rotate(b, 7, 5, 90, a);
+    ImageOps.rotate(a, 5, 7, 90, b);
+    assertArrayEquals(src, b);
+
+    final byte[] gray = randomBytes(7 * 5);
+    final byte[] grayOut = new byte[gray.length];
+    ImageOps.rotate(gray, 7, 5, 270, grayOut);
+    ImageOps.rotate(toArgb(gray), 7, 5, 270, a);
+    assertArrayEquals(grayOut, blueChannel(a));
+  }
+
+  @Test
+  public void flipsMirrorAndMayRunInPlace() {
+    final int[] src = {0, 1, 2, 3, 4, 5};
+    final int[] dst = new int[6];
+    ImageOps.flip(src, 3, 2, true, dst);
+    assertArrayEquals(new int[] {2, 1, 0, 5, 4, 3}, dst);
+    ImageOps.flip(src, 3, 2, false, dst);
+    assertArrayEquals(new int[] {3, 4, 5, 0, 1, 2}, dst);
+
+    for (final boolean horizontal : new boolean[] {true, false}) {
+      final int[] image = randomArgb(7 * 5);
+      final int[] expected = new int[image.length];
+      ImageOps.flip(image, 7, 5, horizontal, expected);
+      ImageOps.flip(image, 7, 5, horizontal, image);
+      assertArrayEquals(expected, image);
+
+      final byte[] gray = randomBytes(7 * 5);
+      final byte[] grayOut = new byte[gray.length];
+      ImageOps.flip(gray, 7, 5, horizontal, grayOut);
+      ImageOps.flip(toArgb(gray), 7, 5, horizontal, expected);
+      assertArrayEquals(grayOut, blueChannel(expected));
+      ImageOps.flip(gray, 7, 5, horizontal, gray);
+      assertArrayEquals(grayOut, gray);
+    }
+  }
+
+  @Test
+  public void cropCopiesTheRectangle() {
+    final int[] src = new int[6 * 4];
+    for (int i = 0; i < src.length; ++i) {
+      src[i] = i;
+    }
+    final int[] dst = new int[3 * 2];
+    ImageOps.crop(src, 6, 4, 2, 1, 3, 2, dst);
+    assertArrayEquals(new int[] {8, 9, 10, 14, 15, 16}, dst);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cropRejectsRectanglesOutsideTheSource() {
+    ImageOps.crop(new byte[6 * 4], 6, 4, 4, 0, 3, 2, new byte[3 * 2]);
+  }
+
+  // Samples channel shift of src at the center of destination pixel (x, y) with bilinear
+  // filtering, clamping at the edges.
+  private static float bilinear(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int shift,
+      final int x,
+      final int y,
+      final int dstWidth,
+      final int dstHeight) {
+    final float sx = clamp((x + 0.5f) * srcWidth / dstWidth - 0.5f, srcWidth - 1);
+    final float sy = clamp((y + 0.5f) * srcHeight / dstHeight - 0.5f, srcHeight - 1);
+    final int x0 = (int) sx;
+    final int y0 = (int) sy;
+    final int x1 = Math.min(x0 + 1, srcWidth - 1);
+    final int y1 = Math.min(y0 + 1, srcHeight - 1);
+    final float fx = sx - x0;
+    final float fy = sy - y0;
+    final float top =
+        channel(src[y0 * srcWidth + x0], shift) * (1 - fx)
+            + channel(src[y0 * srcWidth + x1], shift) * fx;
+    final float bottom =
+        channel(src[y1 * srcWidth + x0], shift) * (1 - fx)
+            + channel(src[y1 * srcWidth + x1], shift) * fx;
+    return top * (1 - fy) + bottom * fy;
+  }
+
+  private static float clamp(final float value, final float max) {
+    return value < 0 ? 0 : Math.min(value, max);
+  }
+
+  private static int channel(final int pixel, final int shift) {
+    return (pixel >>> shift) & 0xff;
+  }
+
+  private static int[] randomArgb(final int size) {
+    final int[] pixels = new int[size];
+    final Random random = new Random(size);
+    for (int i = 0; i < size; ++i) {
+      pixels[i] = random.nextInt();
+    }
+    return pixels;
+  }
+
+  private static byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  // Puts each byte in the blue channel of an opaque pixel.
+  private static int[] toArgb(final byte[] gray) {
+    final int[] argb = new int[gray.length];
+    for (int i = 0; i < gray.length; ++i) {
+      argb[i] = 0xff000000 | (gray[i] & 0xff);
+    }
+    return argb;
+  }
+
+  private static byte[] blueChannel(final int[] argb) {
+    final byte[] gray = new byte[argb.length];
+    for (int i = 0; i < argb.length; ++i) {
+      gray[i] = (byte) argb[i];
+    }
+    return gray;
+  }
+}
@@ -0,0 +1,105 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.LatencyController.OperatingPoint;
+
+public class LatencyControllerTest {
+  private static final float TARGET_FRAME_MS = 10;
+  private static final int WINDOW = 4;
+  // Downgrade above 12ms per frame, upgrade below 8ms.
+  private static final float MARGIN = 0.2f;
+
+  private final OperatingPoint fast = new OperatingPoint(4, 1);
+  private final OperatingPoint everyOther = new OperatingPoint(4, 2);
+  private final OperatingPoint cheapest = new OperatingPoint(2, 2);
+  private final LatencyController controller =
+      new LatencyController(
+          Arrays.asList(fast, everyOther, cheapest), TARGET_FRAME_MS, WINDOW, MARGIN, MARGIN);
+
+  // Records a window of detections that all took latencyMs, and returns the decision.
+  private OperatingPoint window(final long latencyMs) {
+    for (int i = 0; i < WINDOW - 1; ++i) {
+      assertNull(controller.onLatency(latencyMs));
+    }
+    return controller.onLatency(latencyMs);
+  }
+
+  @Test
+  public void decidesOnTheMeanOfEachWindow() {
+    // One slow detection in a window at exactly the downgrade threshold.
+    assertNull(controller.onLatency(36));
+    assertNull(controller.onLatency(4));
+    assertNull(controller.onLatency(4));
+    assertNull(controller.onLatency(4));
+    assertSame(fast, controller.getOperatingPoint());
+
+    // The next window starts afresh, and a mean just above the threshold moves on.
+    assertNull(controller.onLatency(4));
+    assertNull(controller.onLatency(4));
+    assertNull(controller.onLatency(4));
+    assertSame(everyOther, controller.onLatency(37));
+  }
+
+  @Test
+  public void downgradesOnlyAboveMarginPerCameraFrame() {
+    assertNull(window(12));
+    assertSame(everyOther, window(13));
+    // Detecting every other frame halves the cost of a detection.
+    assertNull(window(24));
+    assertSame(cheapest, window(25));
+    // Nothing is cheaper than the cheapest point.
+    assertNull(window(1000));
+    assertSame(cheapest, controller.getOperatingPoint());
+  }
+
+  @Test
+  public void upgradesOnlyBelowMarginAfterHoldoff() {
+    assertSame(everyOther, window(13));
+    // Having just left the fast point, the first window waits even when fast enough.
+    assertNull(window(10));
+    // 16ms every other frame is exactly at the upgrade threshold.
+    assertNull(window(16));
+    assertSame(fast, window(15));
+    // Nothing is more expensive than the first point.
+    assertNull(window(0));
+    assertSame(fast, controller.getOperatingPoint());
+  }
+
+  @Test
+  public void doublesHoldoffEachTimeAPointIsLeft() {
+    assertSame(everyOther, window(13));
+    assertNull(window(2));
+    assertSame(fast, window(2));
+
+    assertSame(everyOther, window(13));
+    for (int i = 0; i < 3; ++i) {
+      assertNull(window(2));
+    }
+    assertSame(fast, window(2));
+
+    assertSame(everyOther, window(13));
+    for (int i = 0; i < 7; ++i) {
+      assertNull(window(2));
+    }
+    assertSame(fast, window(2));
+  }
+}
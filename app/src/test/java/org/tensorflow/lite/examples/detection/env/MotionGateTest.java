@@ -0,0 +1,142 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class MotionGateTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 6;
+  // Rows are padded, as camera planes often are.
+  private static final int ROW_STRIDE = 10;
+  private static final int STEP = 2;
+  private static final float THRESHOLD = 10.0f;
+  private static final long MAX_REUSE_MS = 1000;
+  private static final long COST_MS = 30;
+
+  private final MotionGate gate = new MotionGate(WIDTH, HEIGHT, STEP, THRESHOLD, MAX_REUSE_MS);
+
+  private static ByteBuffer frame(final int luminance) {
+    final byte[] plane = new byte[ROW_STRIDE * HEIGHT];
+    Arrays.fill(plane, (byte) luminance);
+    return ByteBuffer.wrap(plane);
+  }
+
+  private boolean shouldDetect(final ByteBuffer frame, final long nowMs) {
+    return gate.shouldDetect(frame, ROW_STRIDE, nowMs, COST_MS);
+  }
+
+  @Test
+  public void detectsOnFirstFrame() {
+    assertTrue(shouldDetect(frame(100), 0));
+  }
+
+  @Test
+  public void onlyComparesWithFramesSentToDetection() {
+    final ByteBuffer still = frame(100);
+    assertTrue(shouldDetect(still, 0));
+    // Let through, but dropped before detection, so still no reference.
+    assertTrue(shouldDetect(still, 10));
+    gate.onDetect(still, ROW_STRIDE, 10);
+    assertFalse(shouldDetect(still, 20));
+  }
+
+  @Test
+  public void skipsFramesWithinThreshold() {
+    gate.onDetect(frame(100), ROW_STRIDE, 0);
+
+    assertFalse(shouldDetect(frame(109), 10));
+    assertFalse(shouldDetect(frame(91), 20));
+    assertTrue(shouldDetect(frame(110), 30));
+    assertTrue(shouldDetect(frame(90), 40));
+    // Skipped frames don't move the reference, so a slow drift is caught.
+    assertFalse(shouldDetect(frame(105), 50));
+    assertTrue(shouldDetect(frame(115), 60));
+  }
+
+  @Test
+  public void comparesMeanOfGridSamples() {
+    final ByteBuffer reference = frame(100);
+    gate.onDetect(reference, ROW_STRIDE, 0);
+
+    // Changes between the samples, and in the row padding, are not seen.
+    final ByteBuffer offGrid = frame(100);
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < ROW_STRIDE; ++x) {
+        if (y % STEP != 0 || x % STEP != 0 || x >= WIDTH) {
+          offGrid.put(y * ROW_STRIDE + x, (byte) 255);
+        }
+      }
+    }
+    assertFalse(shouldDetect(offGrid, 10));
+
+    // One sample of the 12 changing by 120 is a mean of 10.
+    final ByteBuffer oneSample = frame(100);
+    oneSample.put(2 * ROW_STRIDE + 4, (byte) 220);
+    assertTrue(shouldDetect(oneSample, 20));
+    oneSample.put(2 * ROW_STRIDE + 4, (byte) 219);
+    assertFalse(shouldDetect(oneSample, 30));
+  }
+
+  @Test
+  public void detectsStaticSceneOnceReferenceIsTooOld() {
+    final ByteBuffer still = frame(100);
+    gate.onDetect(still, ROW_STRIDE, 0);
+
+    assertFalse(shouldDetect(still, MAX_REUSE_MS - 1));
+    assertTrue(shouldDetect(still, MAX_REUSE_MS));
+    gate.onDetect(still, ROW_STRIDE, MAX_REUSE_MS);
+    assertFalse(shouldDetect(still, MAX_REUSE_MS + 1));
+  }
+
+  @Test
+  public void detectsAfterReset() {
+    final ByteBuffer still = frame(100);
+    gate.onDetect(still, ROW_STRIDE, 0);
+    assertFalse(shouldDetect(still, 10));
+
+    gate.reset();
+    assertTrue(shouldDetect(still, 20));
+    assertEquals(0, gate.getSkippedFrames());
+  }
+
+  @Test
+  public void countsSkippedFramesAndSavings() {
+    final ByteBuffer still = frame(100);
+    assertTrue(shouldDetect(still, 0));
+    gate.onDetect(still, ROW_STRIDE, 0);
+    assertFalse(shouldDetect(still, 10));
+    assertFalse(shouldDetect(still, 20));
+    assertEquals(2, gate.getSkippedFrames());
+
+    assertTrue(shouldDetect(frame(200), 30));
+    gate.onDetect(frame(200), ROW_STRIDE, 30);
+    assertEquals(0, gate.getSkippedFrames());
+    assertFalse(shouldDetect(frame(200), 40));
+
+    assertEquals(1, gate.getSkippedFrames());
+    assertEquals(3, gate.getTotalSkippedFrames());
+    assertEquals(5, gate.getTotalFrames());
+    assertEquals(3 * COST_MS, gate.getSavedMs());
+    assertEquals("3 of 5 frames skipped, saving about 90ms", gate.getStatString());
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to convert an NV21 frame with 1 to 8 bands. Only shows scaling on a machine with at least
+ * as many free cores as bands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelYuvConverterBenchmark {
+  @Param({"640x480", "1280x720"})
+  private String size;
+
+  @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+  private int bands;
+
+  private int width;
+  private int height;
+  private byte[] input;
+  private int[] output;
+  private ParallelYuvConverter converter;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    input = new byte[ImageUtils.getYUVByteSize(width, height)];
+    new Random(0).nextBytes(input);
+    output = new int[width * height];
+    converter = new ParallelYuvConverter(bands, true);
+  }
+
+  @TearDown
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Benchmark
+  public int[] convert() {
+    converter.convertYUV420SPToARGB8888(input, width, height, output);
+    return output;
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class ParallelYuvConverterTest {
+  private static final int[][] SIZES = {{640, 480}, {1280, 720}, {33, 17}};
+
+  @Test
+  public void nv21MatchesSerialConversionForAllBandCounts() {
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] input = new byte[ImageUtils.getYUVByteSize(width, height)];
+      new Random(width).nextBytes(input);
+      final int[] expected = new int[width * height];
+      ImageUtils.convertYUV420SPToARGB8888(input, width, height, expected);
+
+      for (int bands = 1; bands <= 8; ++bands) {
+        final ParallelYuvConverter converter = new ParallelYuvConverter(bands, true);
+        final int[] actual = new int[width * height];
+        converter.convertYUV420SPToARGB8888(input, width, height, actual);
+        converter.close();
+        assertArrayEquals(width + "x" + height + ", " + bands + " bands", expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void planarMatchesSerialConversionForAllBandCounts() {
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final int uvWidth = (width + 1) / 2;
+      final int uvHeight = (height + 1) / 2;
+      final Random random = new Random(height);
+      final ByteBuffer y = randomBuffer(random, width * height);
+      final ByteBuffer u = randomBuffer(random, uvWidth * uvHeight);
+      final ByteBuffer v = randomBuffer(random, uvWidth * uvHeight);
+      final int[] expected = new int[width * height];
+      ImageUtils.convertYUV420ToARGB8888(
+          y, u, v, width, width, uvWidth, 1, expected, false, 0, height);
+
+      for (int bands = 1; bands <= 8; ++bands) {
+        final ParallelYuvConverter converter = new ParallelYuvConverter(bands, true);
+        final int[] actual = new int[width * height];
+        converter.convertYUV420ToARGB8888(y, u, v, width, height, width, uvWidth, 1, actual);
+        converter.close();
+        assertArrayEquals(width + "x" + height + ", " + bands + " bands", expected, actual);
+      }
+    }
+  }
+
+  private static ByteBuffer randomBuffer(final Random random, final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+}
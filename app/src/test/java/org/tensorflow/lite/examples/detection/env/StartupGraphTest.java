@@ -0,0 +1,160 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+public class StartupGraphTest {
+  // Runs tasks on the calling thread, so the graph has run as far as it can once start() returns.
+  private static final Executor DIRECT = Runnable::run;
+
+  private final List<String> ran = new ArrayList<String>();
+  private final List<String> completions = new ArrayList<String>();
+  private String failedTask;
+  private Throwable failure;
+
+  private final StartupGraph.Listener listener =
+      new StartupGraph.Listener() {
+        @Override
+        public void onComplete(final long elapsedMs) {
+          completions.add("complete");
+        }
+
+        @Override
+        public void onFailure(final String taskName, final Throwable error) {
+          completions.add("failure");
+          failedTask = taskName;
+          failure = error;
+        }
+      };
+
+  private StartupGraph.Task record(final String name) {
+    return () -> ran.add(name);
+  }
+
+  private static StartupGraph.Task fail(final Throwable error) {
+    return () -> {
+      if (error instanceof Exception) {
+        throw (Exception) error;
+      }
+      throw (Error) error;
+    };
+  }
+
+  @Test
+  public void runsTasksAfterTheirDependencies() {
+    new StartupGraph(DIRECT)
+        .add("a", record("a"))
+        .add("b", record("b"), "a")
+        .add("c", record("c"))
+        .add("d", record("d"), "b", "c")
+        .start(listener);
+
+    assertEquals(Arrays.asList("a", "b", "c", "d"), ran);
+    assertEquals(Arrays.asList("complete"), completions);
+  }
+
+  @Test
+  public void failedTaskCancelsItsDependents() {
+    final IOException error = new IOException("No model");
+    new StartupGraph(DIRECT)
+        .add("model", fail(error))
+        .add("independent", record("independent"))
+        .add("detector", record("detector"), "model")
+        .add("region", record("region"), "detector")
+        .add("both", record("both"), "independent", "detector")
+        .start(listener);
+
+    assertEquals(Arrays.asList("failure"), completions);
+    assertEquals("model", failedTask);
+    assertSame(error, failure);
+    // The independent task only got to run after the failure, so it was skipped as well.
+    assertTrue(ran.isEmpty());
+  }
+
+  @Test
+  public void independentTasksStartedEarlierStillRun() {
+    new StartupGraph(DIRECT)
+        .add("independent", record("independent"))
+        .add("model", fail(new IOException("No model")))
+        .add("detector", record("detector"), "model")
+        .start(listener);
+
+    assertEquals(Arrays.asList("independent"), ran);
+    assertEquals(Arrays.asList("failure"), completions);
+  }
+
+  @Test
+  public void reportsErrors() {
+    final Error error = new UnsatisfiedLinkError("No native library");
+    new StartupGraph(DIRECT)
+        .add("interpreter", fail(error))
+        .add("detector", record("detector"), "interpreter")
+        .start(listener);
+
+    assertTrue(ran.isEmpty());
+    assertEquals("interpreter", failedTask);
+    assertSame(error, failure);
+  }
+
+  @Test
+  public void reportsOnlyFirstFailure() {
+    final IOException first = new IOException("first");
+    new StartupGraph(DIRECT)
+        .add("first", fail(first))
+        .add("second", fail(new IOException("second")))
+        .start(listener);
+
+    assertEquals(Arrays.asList("failure"), completions);
+    assertSame(first, failure);
+  }
+
+  @Test
+  public void reportsTaskThatCouldNotBeScheduled() {
+    final Executor shutDown =
+        command -> {
+          throw new RejectedExecutionException("Shut down");
+        };
+    new StartupGraph(DIRECT)
+        .add("a", record("a"))
+        .add("overlay", shutDown, record("overlay"), "a")
+        .add("after", record("after"), "overlay")
+        .start(listener);
+
+    assertEquals(Arrays.asList("a"), ran);
+    assertEquals("overlay", failedTask);
+    assertTrue(failure instanceof RejectedExecutionException);
+  }
+
+  @Test
+  public void completesEmptyGraph() {
+    new StartupGraph(DIRECT).start(listener);
+
+    assertEquals(Arrays.asList("complete"), completions);
+    assertNull(failure);
+  }
+}
@@ -0,0 +1,58 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class YuvLookupTableTest {
+  @Test
+  public void yuvToArgbMatchesArithmeticConversionForAllInputs() {
+    for (int y = 0; y < 256; ++y) {
+      for (int u = 0; u < 256; ++u) {
+        for (int v = 0; v < 256; ++v) {
+          final int expected = ImageUtils.YUV2RGB(y, u, v);
+          final int actual = YuvLookupTable.yuvToArgb(y, u, v);
+          if (actual != expected) {
+            fail(
+                String.format(
+                    "YUV (%d, %d, %d): expected %08x, got %08x", y, u, v, expected, actual));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nv21RowsMatchArithmeticConversion() {
+    // An odd width exercises the last, unpaired pixel of each row.
+    for (final int width : new int[] {64, 33}) {
+      final int height = 24;
+      final byte[] input = new byte[ImageUtils.getYUVByteSize(width, height)];
+      new Random(width).nextBytes(input);
+
+      final int[] expected = new int[width * height];
+      ImageUtils.convertYUV420SPToARGB8888(input, width, height, expected);
+      final int[] actual = new int[width * height];
+      YuvLookupTable.convertNV21Rows(input, width, height, actual, 0, height);
+
+      assertArrayEquals(expected, actual);
+    }
+  }
+}
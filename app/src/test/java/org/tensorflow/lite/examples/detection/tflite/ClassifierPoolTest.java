@@ -0,0 +1,198 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+
+public class ClassifierPoolTest {
+  private static final long TIMEOUT_MS = 10000;
+  // Recorded for requests delivered without results, and for failed ones.
+  private static final int EMPTY = -1;
+  private static final int FAILED = -2;
+
+  private final FakeClassifier.Script script = new FakeClassifier.Script();
+
+  private static class Factory implements ClassifierPool.Factory {
+    final FakeClassifier.Script script;
+    final List<FakeClassifier> created = new ArrayList<FakeClassifier>();
+
+    Factory(final FakeClassifier.Script script) {
+      this.script = script;
+    }
+
+    @Override
+    public synchronized Classifier create() {
+      final FakeClassifier classifier = new FakeClassifier(script);
+      created.add(classifier);
+      return classifier;
+    }
+  }
+
+  // Records the ids of delivered results.
+  private static class Recorder implements ClassifierPool.Callback {
+    final List<Long> sequences = new ArrayList<Long>();
+    final List<Integer> ids = new ArrayList<Integer>();
+
+    @Override
+    public synchronized void onResults(final long sequence, final List<Recognition> results) {
+      record(sequence, results.isEmpty() ? EMPTY : Integer.parseInt(results.get(0).getTitle()));
+    }
+
+    @Override
+    public synchronized void onFailure(final long sequence, final Throwable error) {
+      record(sequence, FAILED);
+    }
+
+    private void record(final long sequence, final int id) {
+      sequences.add(sequence);
+      ids.add(id);
+      notifyAll();
+    }
+
+    synchronized void awaitCount(final int count) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      while (ids.size() < count && System.currentTimeMillis() < deadline) {
+        wait(deadline - System.currentTimeMillis());
+      }
+      assertEquals(count, ids.size());
+    }
+  }
+
+  private ClassifierPool newPool(final int numInstances) throws Exception {
+    return new ClassifierPool(new Factory(script), numInstances, 1);
+  }
+
+  @Test
+  public void deliversInSubmissionOrder() throws Exception {
+    final ClassifierPool pool = newPool(3);
+    final Recorder recorder = new Recorder();
+    final List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 3; ++i) {
+      script.hold(i);
+    }
+    for (int i = 0; i < 12; ++i) {
+      pool.submit(FakeClassifier.input(i), recorder);
+      expected.add(i);
+    }
+    // Later requests finish first.
+    for (int i = 2; i >= 0; --i) {
+      script.awaitStarted(i);
+    }
+    for (int i = 2; i >= 0; --i) {
+      script.release(i);
+      script.awaitFinished(i);
+    }
+    recorder.awaitCount(expected.size());
+    pool.close();
+
+    assertEquals(expected, recorder.ids);
+    for (int i = 0; i < recorder.sequences.size(); ++i) {
+      assertEquals(i, (long) recorder.sequences.get(i));
+    }
+  }
+
+  @Test
+  public void setsThreadsPerInstance() throws Exception {
+    final Factory factory = new Factory(script);
+    final ClassifierPool pool = new ClassifierPool(factory, new int[] {3, 1});
+    pool.close();
+
+    assertEquals(2, pool.getNumInstances());
+    assertEquals(3, factory.created.get(0).getNumThreads());
+    assertEquals(1, factory.created.get(1).getNumThreads());
+    assertTrue(factory.created.get(0).isClosed());
+    assertTrue(factory.created.get(1).isClosed());
+  }
+
+  @Test
+  public void interruptedWorkerDoesNotBlockLaterRequests() throws Exception {
+    final ClassifierPool pool = newPool(2);
+    final Recorder recorder = new Recorder();
+    script.hold(0);
+    pool.submit(FakeClassifier.input(0), recorder);
+    pool.submit(FakeClassifier.input(1), recorder);
+    // The worker that ran request 1 waits for request 0 to be delivered. Interrupting it must not
+    // lose its turn, and stops it once it has delivered.
+    final Thread worker = script.awaitStarted(1);
+    script.awaitFinished(1);
+    worker.interrupt();
+    script.release(0);
+    for (int i = 2; i < 6; ++i) {
+      pool.submit(FakeClassifier.input(i), recorder);
+    }
+    recorder.awaitCount(6);
+    pool.close();
+
+    for (int i = 0; i < 6; ++i) {
+      assertEquals(i, (int) recorder.ids.get(i));
+    }
+  }
+
+  @Test
+  public void requestsLeftByStoppedWorkersAreDeliveredEmpty() throws Exception {
+    final ClassifierPool pool = newPool(1);
+    final Recorder recorder = new Recorder();
+    script.hold(0);
+    pool.submit(FakeClassifier.input(0), recorder);
+    pool.submit(FakeClassifier.input(1), recorder);
+    pool.submit(FakeClassifier.input(2), recorder);
+    script.awaitStarted(0).interrupt();
+    script.release(0);
+    recorder.awaitCount(3);
+
+    assertEquals(0, (int) recorder.ids.get(0));
+    assertEquals(EMPTY, (int) recorder.ids.get(1));
+    assertEquals(EMPTY, (int) recorder.ids.get(2));
+    // The pool closed itself before delivering the orphaned requests.
+    try {
+      pool.submit(FakeClassifier.input(3), recorder);
+      fail("Expected the pool to reject requests");
+    } catch (final IllegalStateException e) {
+      // Expected.
+    }
+    pool.close();
+  }
+
+  @Test
+  public void deliversErrorsInOrderAndKeepsRunning() throws Exception {
+    final ClassifierPool pool = newPool(2);
+    final Recorder recorder = new Recorder();
+    script.fail(1, new OutOfMemoryError("Fake"));
+    for (int i = 0; i < 3; ++i) {
+      pool.submit(FakeClassifier.input(i), recorder);
+    }
+    recorder.awaitCount(3);
+
+    assertEquals(0, (int) recorder.ids.get(0));
+    assertEquals(FAILED, (int) recorder.ids.get(1));
+    assertEquals(2, (int) recorder.ids.get(2));
+    try {
+      pool.recognizeImage(FakeClassifier.input(1));
+      fail("Expected the Error to be rethrown");
+    } catch (final OutOfMemoryError e) {
+      assertEquals("Fake", e.getMessage());
+    }
+    assertEquals("3", pool.recognizeImage(FakeClassifier.input(3)).get(0).getTitle());
+    pool.close();
+  }
+}
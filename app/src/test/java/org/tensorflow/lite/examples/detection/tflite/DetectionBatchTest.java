@@ -0,0 +1,152 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+
+public class DetectionBatchTest {
+  private static final List<String> LABELS = Arrays.asList("???", "person", "dog");
+
+  // Detection i has the box (i, 10 + i, 20 + i, 40 + i), class 1 + i % 2 and score i / 10.
+  private static DetectionBatch batch(final int capacity, final int count) {
+    final DetectionBatch batch = new DetectionBatch(capacity);
+    batch.setLabels(LABELS);
+    for (int i = 0; i < count; ++i) {
+      batch.add(i, 10 + i, 20 + i, 40 + i, 1 + i % 2, i / 10.0f);
+    }
+    return batch;
+  }
+
+  private static void assertDetections(final DetectionBatch batch, final int... indices) {
+    assertEquals(indices.length, batch.getCount());
+    for (int j = 0; j < indices.length; ++j) {
+      final int i = indices[j];
+      assertEquals(i, batch.getLeft(j), 0.0f);
+      assertEquals(10 + i, batch.getTop(j), 0.0f);
+      assertEquals(20 + i, batch.getRight(j), 0.0f);
+      assertEquals(40 + i, batch.getBottom(j), 0.0f);
+      assertEquals(20, batch.getWidth(j), 0.0f);
+      assertEquals(30, batch.getHeight(j), 0.0f);
+      assertEquals(1 + i % 2, batch.getClassId(j));
+      assertEquals(i / 10.0f, batch.getScore(j), 0.0f);
+    }
+  }
+
+  @Test
+  public void storesDetectionsInOrder() {
+    final DetectionBatch batch = batch(4, 3);
+
+    assertDetections(batch, 0, 1, 2);
+    assertEquals("person", batch.getLabel(0));
+    assertEquals("dog", batch.getLabel(1));
+
+    batch.clear();
+    assertTrue(batch.isEmpty());
+    assertEquals(4, batch.getCapacity());
+  }
+
+  @Test
+  public void growsBeyondCapacity() {
+    for (final int capacity : new int[] {0, 1, 3}) {
+      final DetectionBatch batch = batch(capacity, 7);
+
+      assertTrue(batch.getCapacity() >= 7);
+      assertDetections(batch, 0, 1, 2, 3, 4, 5, 6);
+    }
+  }
+
+  @Test
+  public void copiesIntoSmallerBatch() {
+    final DetectionBatch source = batch(8, 5);
+    final DetectionBatch copy = new DetectionBatch(1);
+
+    copy.copyFrom(source);
+    source.clear();
+    source.add(100, 100, 200, 200, 0, 1.0f);
+
+    assertDetections(copy, 0, 1, 2, 3, 4);
+    assertEquals("dog", copy.getLabel(3));
+  }
+
+  @Test
+  public void copyReplacesPreviousDetections() {
+    final DetectionBatch copy = batch(8, 6);
+
+    copy.copyFrom(batch(2, 2));
+
+    assertDetections(copy, 0, 1);
+  }
+
+  @Test
+  public void filtersAndTruncatesInOrder() {
+    final DetectionBatch batch = batch(8, 8);
+
+    batch.filter(0.3f);
+    assertDetections(batch, 3, 4, 5, 6, 7);
+    batch.truncate(2);
+    assertDetections(batch, 3, 4);
+    batch.truncate(5);
+    assertDetections(batch, 3, 4);
+  }
+
+  @Test
+  public void hasNoLabelOutsideLabelList() {
+    final DetectionBatch batch = new DetectionBatch(2);
+    batch.add(0, 0, 1, 1, 1, 0.5f);
+    assertNull(batch.getLabel(0));
+
+    batch.setLabels(LABELS);
+    batch.add(0, 0, 1, 1, 3, 0.5f);
+    batch.add(0, 0, 1, 1, -1, 0.5f);
+    assertEquals("person", batch.getLabel(0));
+    assertNull(batch.getLabel(1));
+    assertNull(batch.getLabel(2));
+  }
+
+  @Test
+  public void convertsToRecognitionsWithReusedIds() {
+    final DetectionBatch batch = batch(4, 3);
+
+    final List<Recognition> first = batch.toRecognitions();
+    final List<Recognition> second = batch.toRecognitions();
+
+    assertEquals(3, first.size());
+    for (int i = 0; i < first.size(); ++i) {
+      assertEquals(Integer.toString(i), first.get(i).getId());
+      assertSame(first.get(i).getId(), second.get(i).getId());
+      assertEquals(batch.getLabel(i), first.get(i).getTitle());
+      assertEquals(batch.getScore(i), first.get(i).getConfidence(), 0.0f);
+    }
+  }
+
+  @Test
+  public void convertsBeyondCachedIds() {
+    final DetectionBatch batch = batch(0, 150);
+
+    final List<Recognition> recognitions = batch.toRecognitions();
+
+    assertEquals(150, recognitions.size());
+    assertEquals("149", recognitions.get(149).getId());
+  }
+}
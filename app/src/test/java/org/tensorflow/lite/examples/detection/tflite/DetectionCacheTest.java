@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.PerceptualHash;
+
+public class DetectionCacheTest {
+  private static final long FRAME_HASH = 0x0123456789ABCDEFL;
+
+  private static DetectionCache newCache() {
+    return new DetectionCache(4, 10, 4, 60000, 0);
+  }
+
+  private static DetectionBatch detections(final float left) {
+    final DetectionBatch batch = new DetectionBatch(10);
+    batch.add(left, 10, left + 50, 60, 1, 0.9f);
+    return batch;
+  }
+
+  @Test
+  public void findsCloseHashesAndCopiesDetections() {
+    final DetectionCache cache = newCache();
+    cache.put(FRAME_HASH, 0, detections(10));
+
+    final DetectionBatch results = new DetectionBatch(10);
+    // Three bits off.
+    assertTrue(cache.find(FRAME_HASH ^ 0x7, 1, results));
+    assertEquals(1, results.getCount());
+    assertEquals(10, results.getLeft(0), 0.0f);
+
+    // Replacing the entry leaves the copy alone.
+    cache.put(FRAME_HASH, 2, detections(100));
+    assertEquals(10, results.getLeft(0), 0.0f);
+    assertFalse(cache.find(~FRAME_HASH, 3, results));
+    assertEquals(2, cache.getLookups());
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void separatesRegionsOfTheSameFrame() {
+    final DetectionCache cache = newCache();
+    cache.put(PerceptualHash.withRegion(FRAME_HASH, 0, 0, 640, 480), 0, detections(10));
+
+    final DetectionBatch results = new DetectionBatch(10);
+    assertTrue(
+        cache.find(PerceptualHash.withRegion(FRAME_HASH ^ 0x1, 0, 0, 640, 480), 1, results));
+    assertFalse(
+        cache.find(PerceptualHash.withRegion(FRAME_HASH, 160, 120, 320, 240), 1, results));
+    assertFalse(cache.find(PerceptualHash.withRegion(FRAME_HASH, 1, 0, 640, 480), 1, results));
+  }
+
+  @Test
+  public void expiresOldEntries() {
+    final DetectionCache cache = newCache();
+    cache.put(FRAME_HASH, 0, detections(10));
+
+    assertFalse(cache.find(FRAME_HASH, 60001, new DetectionBatch(10)));
+  }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DetectionQueryTest {
+  @Test
+  public void acceptsEverythingByDefault() {
+    final DetectionQuery query = new DetectionQuery();
+
+    assertTrue(query.accepts(0, 0.0f));
+    assertTrue(query.accepts(90, 1.0f));
+    assertTrue(query.accepts(-1, 0.5f));
+    assertEquals(Integer.MAX_VALUE, query.getMaxResults());
+  }
+
+  @Test
+  public void acceptsScoresFromMinimum() {
+    final DetectionQuery query = new DetectionQuery().setMinimumScore(0.5f);
+
+    assertTrue(query.accepts(1, 0.5f));
+    assertFalse(query.accepts(1, Math.nextDown(0.5f)));
+  }
+
+  @Test
+  public void masksClasses() {
+    final DetectionQuery query = new DetectionQuery().allowClass(1).allowClass(200);
+
+    assertTrue(query.accepts(1, 0.5f));
+    assertTrue(query.accepts(200, 0.5f));
+    assertFalse(query.accepts(2, 0.5f));
+    assertFalse(query.accepts(0, 0.5f));
+    assertFalse(query.accepts(-1, 0.5f));
+    assertFalse(query.accepts(1000, 0.5f));
+
+    query.allowAllClasses();
+    assertTrue(query.accepts(2, 0.5f));
+  }
+
+  @Test
+  public void appliesScoreAndClassTogether() {
+    final DetectionQuery query = new DetectionQuery().setMinimumScore(0.5f).allowClass(1);
+
+    assertTrue(query.accepts(1, 0.6f));
+    assertFalse(query.accepts(1, 0.4f));
+    assertFalse(query.accepts(2, 0.6f));
+  }
+
+  @Test
+  public void copiesAreIndependent() {
+    final DetectionQuery original =
+        new DetectionQuery().setMinimumScore(0.3f).setMaxResults(5).allowClass(3);
+    final DetectionQuery copy = new DetectionQuery().allowClass(7);
+
+    copy.set(original);
+    original.setMinimumScore(0.9f).setMaxResults(1).allowClass(4);
+
+    assertEquals(0.3f, copy.getMinimumScore(), 0.0f);
+    assertEquals(5, copy.getMaxResults());
+    assertTrue(copy.accepts(3, 0.3f));
+    assertFalse(copy.accepts(4, 0.3f));
+    assertFalse(copy.accepts(7, 0.3f));
+  }
+
+  @Test
+  public void copyOfUnmaskedQueryAcceptsAllClasses() {
+    final DetectionQuery copy = new DetectionQuery().allowClass(7);
+
+    copy.set(new DetectionQuery());
+
+    assertTrue(copy.accepts(1, 0.0f));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeMaxResults() {
+    new DetectionQuery().setMaxResults(-1);
+  }
+}
@@ -0,0 +1,214 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Classifier for JVM tests. Input is a ByteBuffer whose first byte is an id, and it recognizes a
+ * single result titled with the id. Bitmaps carry no id, and nothing is recognized on them. A
+ * {@link Script} shared by several instances lets a test hold, observe and fail requests by id.
+ */
+public class FakeClassifier implements Classifier {
+  private static final long TIMEOUT_MS = 10000;
+
+  /** What recognition of each id does, on whichever instance runs it. */
+  public static class Script {
+    private final Map<Integer, CountDownLatch> gates = new HashMap<Integer, CountDownLatch>();
+    private final Map<Integer, CountDownLatch> started = new HashMap<Integer, CountDownLatch>();
+    private final Map<Integer, CountDownLatch> finished = new HashMap<Integer, CountDownLatch>();
+    private final Map<Integer, Thread> threads = new HashMap<Integer, Thread>();
+    private final Map<Integer, Throwable> failures = new HashMap<Integer, Throwable>();
+
+    /** Makes recognition of id wait until {@link #release(int)} is called. */
+    public synchronized void hold(final int id) {
+      gates.put(id, new CountDownLatch(1));
+    }
+
+    public synchronized void release(final int id) {
+      gates.get(id).countDown();
+    }
+
+    /** Makes recognition of id throw. */
+    public synchronized void fail(final int id, final Throwable failure) {
+      failures.put(id, failure);
+    }
+
+    /** Waits until recognition of id has started, and returns the thread running it. */
+    public Thread awaitStarted(final int id) throws InterruptedException {
+      await(latch(started, id));
+      synchronized (this) {
+        return threads.get(id);
+      }
+    }
+
+    /** Waits until recognition of id has returned or thrown. */
+    public void awaitFinished(final int id) throws InterruptedException {
+      await(latch(finished, id));
+    }
+
+    private synchronized CountDownLatch latch(
+        final Map<Integer, CountDownLatch> latches, final int id) {
+      CountDownLatch latch = latches.get(id);
+      if (latch == null) {
+        latch = new CountDownLatch(1);
+        latches.put(id, latch);
+      }
+      return latch;
+    }
+
+    private static void await(final CountDownLatch latch) throws InterruptedException {
+      if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        throw new AssertionError("Timed out");
+      }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          latch.await();
+          break;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // Runs on the instance's thread. An interrupt while held is kept for the caller, as the
+    // interpreter would.
+    void run(final int id) {
+      final CountDownLatch gate;
+      final Throwable failure;
+      synchronized (this) {
+        threads.put(id, Thread.currentThread());
+        gate = gates.get(id);
+        failure = failures.get(id);
+      }
+      latch(started, id).countDown();
+      try {
+        if (gate != null) {
+          awaitUninterruptibly(gate);
+        }
+        if (failure instanceof Error) {
+          throw (Error) failure;
+        }
+        if (failure instanceof RuntimeException) {
+          throw (RuntimeException) failure;
+        }
+      } finally {
+        latch(finished, id).countDown();
+      }
+    }
+  }
+
+  private final Script script;
+  private volatile int numThreads = -1;
+  private volatile boolean closed = false;
+
+  public FakeClassifier() {
+    this(new Script());
+  }
+
+  public FakeClassifier(final Script script) {
+    this.script = script;
+  }
+
+  /** Returns input for the given id. */
+  public static ByteBuffer input(final int id) {
+    return ByteBuffer.wrap(new byte[] {(byte) id});
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final ByteBuffer inputData) {
+    final int id = inputData.get(0);
+    script.run(id);
+    if (closed) {
+      // The interpreter would have been freed under the running inference.
+      throw new IllegalStateException("Closed while recognizing " + id);
+    }
+    final List<Recognition> results = new ArrayList<Recognition>();
+    results.add(new Recognition("0", Integer.toString(id), 1.0f, new RectF()));
+    return results;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    return new ArrayList<Recognition>();
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final List<List<Recognition>> results = new ArrayList<List<Recognition>>(bitmaps.size());
+    for (final Bitmap bitmap : bitmaps) {
+      results.add(recognizeImage(bitmap));
+    }
+    return results;
+  }
+
+  @Override
+  public void detect(final Bitmap bitmap, final DetectionBatch results) {
+    results.clear();
+  }
+
+  @Override
+  public void detect(final ByteBuffer inputData, final DetectionBatch results) {
+    results.setRecognitions(recognizeImage(inputData));
+  }
+
+  @Override
+  public void setQuery(final DetectionQuery query) {}
+
+  @Override
+  public void enableStatLogging(final boolean debug) {}
+
+  @Override
+  public String getStatString() {
+    return "";
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  @Override
+  public void setNumThreads(final int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {}
+}
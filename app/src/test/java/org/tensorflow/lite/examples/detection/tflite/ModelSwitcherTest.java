@@ -0,0 +1,152 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ModelSwitcherTest {
+  private static final long TIMEOUT_MS = 10000;
+  private static final ModelSpec SMALL =
+      new ModelSpec("small", "small.tflite", "labels.txt", 300, true);
+  private static final ModelSpec LARGE =
+      new ModelSpec("large", "large.tflite", "labels.txt", 640, false);
+  private static final ModelSpec MISSING =
+      new ModelSpec("missing", "missing.tflite", "labels.txt", 300, true);
+
+  private final FakeClassifier.Script script = new FakeClassifier.Script();
+  private final Map<String, FakeClassifier> models = new HashMap<String, FakeClassifier>();
+  // Stands in for the activity's background thread, which runs one detection at a time.
+  private final ExecutorService inference = Executors.newSingleThreadExecutor();
+
+  private ModelSwitcher<FakeClassifier> newSwitcher(final FakeClassifier initial) {
+    return new ModelSwitcher<FakeClassifier>(
+        initial,
+        spec -> {
+          final FakeClassifier model = models.get(spec.getName());
+          if (model == null) {
+            throw new IOException("No asset " + spec.getModelFilename());
+          }
+          return model;
+        },
+        FakeClassifier::close,
+        inference);
+  }
+
+  private FakeClassifier addModel(final ModelSpec spec) {
+    final FakeClassifier model = new FakeClassifier(script);
+    models.put(spec.getName(), model);
+    return model;
+  }
+
+  private Future<String> detect(final FakeClassifier model, final int id) {
+    return inference.submit(() -> model.recognizeImage(FakeClassifier.input(id)).get(0).getTitle());
+  }
+
+  private void drainInference() throws Exception {
+    inference.submit(() -> {}).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  private static void load(final Thread loader) throws InterruptedException {
+    loader.join(TIMEOUT_MS);
+    assertFalse(loader.isAlive());
+  }
+
+  @After
+  public void tearDown() {
+    inference.shutdownNow();
+  }
+
+  @Test
+  public void inFlightDetectionFinishesOnOldModelBeforeItIsClosed() throws Exception {
+    final FakeClassifier small = addModel(SMALL);
+    final FakeClassifier large = addModel(LARGE);
+    final ModelSwitcher<FakeClassifier> switcher = newSwitcher(small);
+
+    script.hold(1);
+    final Future<String> inFlight = detect(switcher.getCurrent(), 1);
+    script.awaitStarted(1);
+
+    load(switcher.switchTo(LARGE));
+    assertSame(small, switcher.takeOverPending());
+    assertSame(large, switcher.getCurrent());
+    final Future<String> next = detect(switcher.getCurrent(), 2);
+    assertFalse(small.isClosed());
+
+    script.release(1);
+    // Recognition throws if its model was closed while it ran.
+    assertEquals("1", inFlight.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals("2", next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    drainInference();
+    assertTrue(small.isClosed());
+    assertFalse(large.isClosed());
+  }
+
+  @Test
+  public void switchingAgainBeforeTakeOverClosesTheUnusedModel() throws Exception {
+    final FakeClassifier small = addModel(SMALL);
+    final FakeClassifier large = addModel(LARGE);
+    final ModelSwitcher<FakeClassifier> switcher = newSwitcher(small);
+
+    load(switcher.switchTo(LARGE));
+    models.put(SMALL.getName(), new FakeClassifier(script));
+    final FakeClassifier reloaded = models.get(SMALL.getName());
+    load(switcher.switchTo(SMALL));
+    assertTrue(large.isClosed());
+
+    assertSame(small, switcher.takeOverPending());
+    assertSame(reloaded, switcher.getCurrent());
+    drainInference();
+    assertTrue(small.isClosed());
+    assertFalse(reloaded.isClosed());
+  }
+
+  @Test
+  public void takeOverWithoutSwitchKeepsCurrentModel() throws Exception {
+    final FakeClassifier small = addModel(SMALL);
+    final ModelSwitcher<FakeClassifier> switcher = newSwitcher(small);
+
+    assertNull(switcher.takeOverPending());
+    assertSame(small, switcher.getCurrent());
+    drainInference();
+    assertFalse(small.isClosed());
+  }
+
+  @Test
+  public void failedLoadKeepsCurrentModel() throws Exception {
+    final FakeClassifier small = addModel(SMALL);
+    final ModelSwitcher<FakeClassifier> switcher = newSwitcher(small);
+
+    load(switcher.switchTo(MISSING));
+    assertNull(switcher.takeOverPending());
+    assertSame(small, switcher.getCurrent());
+    assertEquals("3", detect(switcher.getCurrent(), 3).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertFalse(small.isClosed());
+  }
+}
@@ -0,0 +1,107 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to decode the raw outputs of SSD MobileNet V1 at 300px, 1917 anchors and 90 classes, with
+ * per-class and class agnostic suppression, with and without a score floor. The query is the
+ * default one, without a minimum score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NmsBenchmark {
+  private static final int INPUT_SIZE = 300;
+  // Including background.
+  private static final int NUM_CLASSES = 91;
+  private static final int NUM_OBJECTS = 20;
+
+  @Param({"false", "true"})
+  private boolean classAgnostic;
+
+  @Param({"0", "0.05"})
+  private float minScore;
+
+  private SsdAnchorDecoder decoder;
+  private final DetectionQuery query = new DetectionQuery();
+  private final DetectionBatch results = new DetectionBatch(10);
+
+  @Setup
+  public void setUp() {
+    decoder = newDecoder(new SsdAnchorDecoder.Options(minScore, 0.6f, 100, 10, classAgnostic));
+    fillOutputs(decoder, new Random(0));
+  }
+
+  /** Returns a float decoder of SSD MobileNet V1 outputs, box encodings first. */
+  static SsdAnchorDecoder newDecoder(final SsdAnchorDecoder.Options options) {
+    return new SsdAnchorDecoder(
+        INPUT_SIZE,
+        1,
+        SsdAnchors.mobileNetV1(INPUT_SIZE),
+        options,
+        new OutputTensor.Format[] {OutputTensor.Format.FLOAT32, OutputTensor.Format.FLOAT32},
+        0,
+        NUM_CLASSES);
+  }
+
+  /**
+   * Fills the outputs with small box offsets and background scores, a few percent of which pass a
+   * floor of 0.05, plus confident scores for a few objects.
+   */
+  static void fillOutputs(final SsdAnchorDecoder decoder, final Random random) {
+    final ByteBuffer boxes = (ByteBuffer) decoder.getOutputs().get(0);
+    final ByteBuffer scores = (ByteBuffer) decoder.getOutputs().get(1);
+    boxes.rewind();
+    while (boxes.remaining() >= 4) {
+      boxes.putFloat((float) random.nextGaussian());
+    }
+    scores.rewind();
+    while (scores.remaining() >= 4) {
+      scores.putFloat((float) Math.pow(random.nextFloat(), 40));
+    }
+    final int numAnchors = scores.capacity() / 4 / NUM_CLASSES;
+    for (int i = 0; i < NUM_OBJECTS; ++i) {
+      final int anchor = random.nextInt(numAnchors);
+      final int classId = 1 + random.nextInt(NUM_CLASSES - 1);
+      scores.putFloat((anchor * NUM_CLASSES + classId) * 4, 0.5f + 0.5f * random.nextFloat());
+    }
+    decoder.rewind();
+  }
+
+  @Benchmark
+  public DetectionBatch decode() {
+    decoder.decode(0, query, results);
+    return results;
+  }
+}
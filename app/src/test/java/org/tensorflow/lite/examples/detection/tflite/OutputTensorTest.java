@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OutputTensorTest {
+  // Scales of typical score tensors, and awkward ones that don't divide 1 evenly.
+  private static final float[] SCALES = {1 / 256.0f, 1 / 255.0f, 0.1f, 0.0117647f, 0.3f};
+
+  private static void checkThresholds(
+      final OutputTensor.Format format, final int min, final int max) {
+    final OutputTensor tensor = new OutputTensor(format, 1);
+    for (int step = -200; step <= 200; ++step) {
+      checkThreshold(tensor, min, max, step / 100.0f);
+    }
+    // Thresholds that are exactly a stored value, or just either side of it.
+    for (int value = min; value <= max; ++value) {
+      final float exact = tensor.dequantize(value);
+      checkThreshold(tensor, min, max, exact);
+      checkThreshold(tensor, min, max, Math.nextUp(exact));
+      checkThreshold(tensor, min, max, Math.nextDown(exact));
+    }
+  }
+
+  private static void checkThreshold(
+      final OutputTensor tensor, final int min, final int max, final float threshold) {
+    final int value = tensor.quantizeThreshold(threshold);
+    final String message = tensor.getFormat() + ", threshold " + threshold + ", got " + value;
+    assertTrue(message, value >= min && value <= max + 1);
+    if (value <= max) {
+      assertTrue(message, tensor.dequantize(value) >= threshold);
+    }
+    if (value > min) {
+      assertTrue(message, tensor.dequantize(value - 1) < threshold);
+    }
+  }
+
+  @Test
+  public void quantizesThresholdsOfUnsignedTensors() {
+    for (final float scale : SCALES) {
+      for (final int zeroPoint : new int[] {0, 5, 128, 255}) {
+        checkThresholds(OutputTensor.Format.quantized(false, scale, zeroPoint), 0, 255);
+      }
+    }
+  }
+
+  @Test
+  public void quantizesThresholdsOfSignedTensors() {
+    for (final float scale : SCALES) {
+      for (final int zeroPoint : new int[] {-128, -1, 0, 10, 127}) {
+        checkThresholds(OutputTensor.Format.quantized(true, scale, zeroPoint), -128, 127);
+      }
+    }
+  }
+
+  @Test
+  public void readsStoredValues() {
+    final OutputTensor unsigned =
+        new OutputTensor(OutputTensor.Format.quantized(false, 0.5f, 10), 1);
+    unsigned.getBuffer().put(0, (byte) 200);
+    assertEquals(200, unsigned.getQuantized(0));
+    assertEquals(95.0f, unsigned.get(0), 0.0f);
+
+    final OutputTensor signed = new OutputTensor(OutputTensor.Format.quantized(true, 0.5f, 10), 1);
+    signed.getBuffer().put(0, (byte) -56);
+    assertEquals(-56, signed.getQuantized(0));
+    assertEquals(-33.0f, signed.get(0), 0.0f);
+  }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class PostProcessedDecoderTest {
+  private static final int INPUT_SIZE = 100;
+  private static final int NUM_DETECTIONS = 3;
+  private static final float SCORE_SCALE = 1 / 256.0f;
+
+  // Outputs with 8-bit scores of 192, 64 and 128, i.e. 0.75, 0.25 and 0.5, and the classes of
+  // the label map's entries 1 to 3.
+  private static PostProcessedDecoder newDecoder() {
+    final PostProcessedDecoder decoder =
+        new PostProcessedDecoder(
+            INPUT_SIZE,
+            NUM_DETECTIONS,
+            1,
+            new OutputTensor.Format[] {
+              OutputTensor.Format.FLOAT32,
+              OutputTensor.Format.FLOAT32,
+              OutputTensor.Format.quantized(false, SCORE_SCALE, 0),
+              OutputTensor.Format.FLOAT32
+            });
+    final ByteBuffer locations = (ByteBuffer) decoder.getOutputs().get(0);
+    final ByteBuffer classes = (ByteBuffer) decoder.getOutputs().get(1);
+    final ByteBuffer scores = (ByteBuffer) decoder.getOutputs().get(2);
+    final int[] storedScores = {192, 64, 128};
+    for (int i = 0; i < NUM_DETECTIONS; ++i) {
+      // Top, left, bottom and right.
+      locations.putFloat(i * 16, 0.1f * i);
+      locations.putFloat(i * 16 + 4, 0.2f);
+      locations.putFloat(i * 16 + 8, 0.1f * i + 0.5f);
+      locations.putFloat(i * 16 + 12, 0.6f);
+      classes.putFloat(i * 4, i);
+      scores.put(i, (byte) storedScores[i]);
+    }
+    return decoder;
+  }
+
+  private static DetectionBatch decode(final DetectionQuery query) {
+    final DetectionBatch results = new DetectionBatch(NUM_DETECTIONS);
+    newDecoder().decode(0, query, results);
+    return results;
+  }
+
+  @Test
+  public void comparesQuantizedScoresWithMinimum() {
+    // Exactly the score of the third detection.
+    final DetectionBatch results = decode(new DetectionQuery().setMinimumScore(0.5f));
+
+    assertEquals(2, results.getCount());
+    assertEquals(1, results.getClassId(0));
+    assertEquals(0.75f, results.getScore(0), 0.0f);
+    assertEquals(3, results.getClassId(1));
+    assertEquals(0.5f, results.getScore(1), 0.0f);
+    assertEquals(20.0f, results.getLeft(1), 1e-4f);
+    assertEquals(20.0f, results.getTop(1), 1e-4f);
+    assertEquals(60.0f, results.getRight(1), 1e-4f);
+    assertEquals(70.0f, results.getBottom(1), 1e-4f);
+
+    assertEquals(1, decode(new DetectionQuery().setMinimumScore(Math.nextUp(0.5f))).getCount());
+    assertEquals(3, decode(new DetectionQuery()).getCount());
+  }
+
+  @Test
+  public void appliesClassMaskToScoresAboveMinimum() {
+    final DetectionBatch results =
+        decode(new DetectionQuery().setMinimumScore(0.3f).allowClass(2).allowClass(3));
+
+    assertEquals(1, results.getCount());
+    assertEquals(3, results.getClassId(0));
+  }
+}
@@ -0,0 +1,179 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class SsdAnchorDecoderTest {
+  private static final int INPUT_SIZE = 100;
+  // Background and two classes.
+  private static final int NUM_CLASSES = 3;
+  private static final float EPSILON = 1e-4f;
+  // y and x of the center, height and width, as fractions of the input. The first two overlap by
+  // an intersection over union of 0.82, the third is apart from both.
+  private static final float[] ANCHORS = {
+    0.5f, 0.5f, 0.4f, 0.4f,
+    0.5f, 0.54f, 0.4f, 0.4f,
+    0.25f, 0.5f, 0.2f, 0.4f,
+  };
+  private static final int NUM_ANCHORS = ANCHORS.length / 4;
+
+  private static SsdAnchorDecoder.Options options(final float minScore, final boolean agnostic) {
+    return new SsdAnchorDecoder.Options(minScore, 0.6f, 100, 10, agnostic);
+  }
+
+  private static SsdAnchorDecoder newDecoder(final SsdAnchorDecoder.Options options) {
+    return new SsdAnchorDecoder(
+        INPUT_SIZE,
+        1,
+        ANCHORS,
+        options,
+        new OutputTensor.Format[] {OutputTensor.Format.FLOAT32, OutputTensor.Format.FLOAT32},
+        0,
+        NUM_CLASSES);
+  }
+
+  private static void setBox(
+      final SsdAnchorDecoder decoder,
+      final int anchor,
+      final float y,
+      final float x,
+      final float height,
+      final float width) {
+    final ByteBuffer boxes = (ByteBuffer) decoder.getOutputs().get(0);
+    final int offset = anchor * 4 * 4;
+    boxes.putFloat(offset, y);
+    boxes.putFloat(offset + 4, x);
+    boxes.putFloat(offset + 8, height);
+    boxes.putFloat(offset + 12, width);
+  }
+
+  private static void setScore(
+      final SsdAnchorDecoder decoder, final int anchor, final int classId, final float score) {
+    final ByteBuffer scores = (ByteBuffer) decoder.getOutputs().get(1);
+    scores.putFloat((anchor * NUM_CLASSES + classId) * 4, score);
+  }
+
+  private static DetectionBatch decode(
+      final SsdAnchorDecoder decoder, final DetectionQuery query) {
+    final DetectionBatch results = new DetectionBatch(decoder.getMaxDetections());
+    decoder.decode(0, query, results);
+    return results;
+  }
+
+  private static void assertBox(
+      final DetectionBatch results,
+      final int i,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    assertEquals(left, results.getLeft(i), EPSILON);
+    assertEquals(top, results.getTop(i), EPSILON);
+    assertEquals(right, results.getRight(i), EPSILON);
+    assertEquals(bottom, results.getBottom(i), EPSILON);
+  }
+
+  @Test
+  public void suppressesOverlappingBoxOfSameClass() {
+    for (final boolean agnostic : new boolean[] {false, true}) {
+      final SsdAnchorDecoder decoder = newDecoder(options(0.05f, agnostic));
+      setScore(decoder, 0, 1, 0.8f);
+      setScore(decoder, 1, 1, 0.9f);
+
+      final DetectionBatch results = decode(decoder, new DetectionQuery());
+
+      assertEquals(1, results.getCount());
+      assertEquals(1, results.getClassId(0));
+      assertEquals(0.9f, results.getScore(0), 0.0f);
+      assertBox(results, 0, 34, 30, 74, 70);
+    }
+  }
+
+  @Test
+  public void keepsOverlappingBoxesOfDifferentClassesUnlessClassAgnostic() {
+    final SsdAnchorDecoder perClass = newDecoder(options(0.05f, false));
+    final SsdAnchorDecoder agnostic = newDecoder(options(0.05f, true));
+    for (final SsdAnchorDecoder decoder : new SsdAnchorDecoder[] {perClass, agnostic}) {
+      setScore(decoder, 0, 1, 0.9f);
+      setScore(decoder, 1, 2, 0.8f);
+    }
+
+    final DetectionBatch kept = decode(perClass, new DetectionQuery());
+    assertEquals(2, kept.getCount());
+    assertEquals(1, kept.getClassId(0));
+    assertBox(kept, 0, 30, 30, 70, 70);
+    assertEquals(2, kept.getClassId(1));
+    assertBox(kept, 1, 34, 30, 74, 70);
+
+    final DetectionBatch suppressed = decode(agnostic, new DetectionQuery());
+    assertEquals(1, suppressed.getCount());
+    assertEquals(1, suppressed.getClassId(0));
+    assertBox(suppressed, 0, 30, 30, 70, 70);
+  }
+
+  @Test
+  public void decodesBoxRelativeToAnchor() {
+    final SsdAnchorDecoder decoder = newDecoder(options(0.05f, false));
+    // Center moved down by a tenth of the anchor's height and left by a twentieth of its width,
+    // the height doubled and the width kept, after the box coder's scales of 10, 10, 5 and 5.
+    setBox(decoder, 2, 1.0f, -0.5f, (float) (5 * Math.log(2)), 0.0f);
+    setScore(decoder, 2, 2, 0.7f);
+
+    final DetectionBatch results = decode(decoder, new DetectionQuery());
+
+    assertEquals(1, results.getCount());
+    assertEquals(2, results.getClassId(0));
+    assertEquals(0.7f, results.getScore(0), 0.0f);
+    // Center (0.27, 0.48), 0.4 high and 0.4 wide.
+    assertBox(results, 0, 28, 7, 68, 47);
+  }
+
+  @Test
+  public void scoreFloorAppliesToQueriesWithoutMinimum() {
+    for (final boolean agnostic : new boolean[] {false, true}) {
+      final SsdAnchorDecoder lowFloor = newDecoder(options(0.01f, agnostic));
+      final SsdAnchorDecoder floor = newDecoder(options(0.05f, agnostic));
+      for (final SsdAnchorDecoder decoder : new SsdAnchorDecoder[] {lowFloor, floor}) {
+        setScore(decoder, 0, 1, 0.9f);
+        setScore(decoder, 2, 1, 0.04f);
+      }
+
+      assertEquals(2, decode(lowFloor, new DetectionQuery()).getCount());
+      final DetectionBatch results = decode(floor, new DetectionQuery());
+      assertEquals(1, results.getCount());
+      assertEquals(0.9f, results.getScore(0), 0.0f);
+    }
+  }
+
+  @Test
+  public void queryMinimumAboveFloorApplies() {
+    final SsdAnchorDecoder decoder = newDecoder(options(0.05f, false));
+    setScore(decoder, 0, 1, 0.9f);
+    setScore(decoder, 2, 1, 0.3f);
+
+    assertEquals(1, decode(decoder, new DetectionQuery().setMinimumScore(0.5f)).getCount());
+    assertEquals(2, decode(decoder, new DetectionQuery().setMinimumScore(0.2f)).getCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeScoreFloor() {
+    new SsdAnchorDecoder.Options(-0.1f, 0.6f, 100, 10, false);
+  }
+}